@@ -4,12 +4,15 @@ lli przyklad.ll
 
 #
 #   a) Bytecode dla LLVM
-#      $ llvm-as przyklad.ll
+#      $ java ... org.example.Main przyklad.PL przyklad.bc --emit=bc
 #      $ lli przyklad.bc
 #
 #   b) Kod maszynowy
 #      $ llc przyklad.ll
 #      $ clang przyklad.s
 #
-#   c) Interpretacja
+#   c) Od razu z kompilatora (opt/llc/clang uruchamiane przez kompilator)
+#      $ java ... org.example.Main przyklad.PL przyklad -O2 --emit=exe
+#
+#   d) Interpretacja
 #      $ lli przyklad.ll
\ No newline at end of file
@@ -0,0 +1,85 @@
+package org.example.llvm;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import main.java.org.example.ExprParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.example.ir.IrModule;
+import org.example.ir.IrPrinter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times every compiler phase on its own. Each benchmark starts from the previous phase's result, prepared once in
+ * {@link #setUp()}, so a regression shows up in the phase that caused it. The generator has no separate pass: IR is
+ * built while {@link LLVMActions} walks the tree, so {@link #walk()} covers both and {@link #print()} times writing
+ * the finished module.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerPhasesBenchmark {
+    @Param({"DEEP_EXPRESSIONS", "FUNCTIONS", "ARRAYS", "NESTED_CONTROL"})
+    public SyntheticProgram program;
+
+    @Param({"100", "1000"})
+    public int size;
+
+    private String source;
+    private List<? extends Token> tokens;
+    private ExprParser.ProgContext tree;
+    private IrModule module;
+
+    @Setup
+    public void setUp() {
+        source = program.generate(size);
+        tokens = lex();
+        tree = parse();
+        module = walk();
+    }
+
+    @Benchmark
+    public List<? extends Token> lex() {
+        return LexemeFactory.lexer(CharStreams.fromString(source), new LexemeFactory())
+                .getAllTokens();
+    }
+
+    @Benchmark
+    public ExprParser.ProgContext parse() {
+        return new ExprParser(new CommonTokenStream(new ListTokenSource(tokens))).prog();
+    }
+
+    // walks the top-level statements instead of prog, whose exit listener would also print and write the output file
+    @Benchmark
+    public IrModule walk() {
+        final var generator = new LLVMGenerator(CompileOptions.defaults());
+        final var actions = new LLVMActions("unused.ll", generator, CompileOptions.defaults());
+        for (var statement : tree.expr()) {
+            ParseTreeWalker.DEFAULT.walk(actions, statement);
+        }
+        return generator.finish();
+    }
+
+    @Benchmark
+    public void print() throws IOException {
+        new IrPrinter(Writer.nullWriter()).print(module);
+    }
+}
@@ -0,0 +1,108 @@
+package org.example.llvm;
+
+import java.util.function.IntFunction;
+
+/**
+ * Generated inputs for the benchmarks. {@code size} is the number of repeated units (statements, functions,
+ * arrays or nested blocks), so the programs grow linearly and stay valid for any size.
+ */
+public enum SyntheticProgram {
+    // long int and bool chains starting from an array element, so constant folding cannot remove them
+    DEEP_EXPRESSIONS(i -> {
+        final var builder = new StringBuilder();
+        if (i == 0) {
+            builder.append("array int seed = {3, 5, 7};\nint s = seed[1];\n");
+        }
+        final var previous = i == 0 ? "s" : "i" + (i - 1);
+        builder.append("int i").append(i).append(" = ").append(previous);
+        for (int term = 1; term <= 16; term++) {
+            builder.append(term % 3 == 0 ? " - " : " + ")
+                    .append(previous)
+                    .append(" * ")
+                    .append(term);
+        }
+        builder.append(";\n");
+        builder.append("bool b")
+                .append(i)
+                .append(" = ")
+                .append(previous)
+                .append(" == ")
+                .append(i)
+                .append(" && !false || ")
+                .append(i == 0 ? "false" : "b" + (i - 1))
+                .append(";\n");
+        builder.append("print(i").append(i).append(");\n");
+        return builder.toString();
+    }),
+    FUNCTIONS(i -> "int f" + i + "(int x, int y) {\n"
+            + "    int s" + i + " = x + y * " + (i + 1) + ";\n"
+            + "    print(s" + i + ");\n"
+            + "    return s" + i + ";\n"
+            + "};\n"
+            + "int r" + i + " = f" + i + "(" + i + ", 2);\n"
+            + "print(r" + i + ");\n"),
+    ARRAYS(i -> {
+        final var builder = new StringBuilder();
+        builder.append("array int a").append(i).append(" = {");
+        for (int element = 0; element < 64; element++) {
+            builder.append(element == 0 ? "" : ", ").append(element * i);
+        }
+        builder.append("};\n");
+        builder.append("matrix int m").append(i).append(" = {");
+        for (int row = 0; row < 8; row++) {
+            builder.append(row == 0 ? "{" : ", {");
+            for (int column = 0; column < 8; column++) {
+                builder.append(column == 0 ? "" : ", ").append(row * 8 + column + i);
+            }
+            builder.append("}");
+        }
+        builder.append("};\n");
+        builder.append("int e")
+                .append(i)
+                .append(" = a")
+                .append(i)
+                .append("[")
+                .append(i % 64)
+                .append("];\n");
+        builder.append("int c")
+                .append(i)
+                .append(" = m")
+                .append(i)
+                .append("[")
+                .append(i % 8)
+                .append("][")
+                .append((i + 3) % 8)
+                .append("];\n");
+        builder.append("print(c").append(i).append(");\n");
+        return builder.toString();
+    }),
+    // repeat and if/else nested four levels deep inside every unit
+    NESTED_CONTROL(i -> "bool t" + i + " = true;\n"
+            + "int n" + i + " = 3;\n"
+            + "if (t" + i + ") {\n"
+            + "    repeat (n" + i + ") {\n"
+            + "        if (t" + i + ") {\n"
+            + "            repeat (n" + i + ") {\n"
+            + "                int k" + i + " = n" + i + " * 2 + 1;\n"
+            + "                print(k" + i + ");\n"
+            + "            };\n"
+            + "        } else {\n"
+            + "            print(n" + i + ");\n"
+            + "        };\n"
+            + "    };\n"
+            + "};\n");
+
+    private final IntFunction<String> unit;
+
+    SyntheticProgram(IntFunction<String> unit) {
+        this.unit = unit;
+    }
+
+    public String generate(int size) {
+        final var builder = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            builder.append(unit.apply(i));
+        }
+        return builder.toString();
+    }
+}
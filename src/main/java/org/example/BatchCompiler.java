@@ -0,0 +1,127 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import org.example.llvm.CompileOptions;
+import org.example.llvm.CompileReport;
+import org.example.llvm.LLVMFacade;
+import org.example.llvm.OutputFormat;
+
+public class BatchCompiler {
+    private static final List<String> SOURCE_EXTENSIONS = List.of(".pl", ".cl");
+
+    private final int jobs;
+    private final CompileOptions options;
+
+    public BatchCompiler(int jobs, CompileOptions options) {
+        this.jobs = jobs;
+        this.options = options;
+    }
+
+    // report is null when the compilation failed
+    public record Result(Path source, Path output, long nanos, CompileReport report, String error) {
+        public boolean failed() {
+            return error != null;
+        }
+    }
+
+    public static List<Path> collectSources(List<Path> roots) throws IOException {
+        final var sources = new ArrayList<Path>();
+        for (Path root : roots) {
+            if (!Files.isDirectory(root)) {
+                sources.add(root);
+                continue;
+            }
+
+            try (Stream<Path> files = Files.walk(root)) {
+                files.filter(Files::isRegularFile)
+                        .filter(BatchCompiler::isSource)
+                        .sorted()
+                        .forEach(sources::add);
+            }
+        }
+        return sources;
+    }
+
+    public List<Result> compile(List<Path> sources) throws InterruptedException {
+        // the generated parser keeps its DFA in static fields, so one warm-up parse here is shared by every worker
+        LLVMFacade.warmUp();
+
+        final var pool = new ForkJoinPool(jobs);
+        try {
+            final var futures = new ArrayList<Future<Result>>();
+            for (Path source : sources) {
+                futures.add(pool.submit(() -> compileOne(source)));
+            }
+
+            final var results = new ArrayList<Result>();
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public static void printSummary(List<Result> results) {
+        long totalNanos = 0;
+        int failures = 0;
+        for (Result result : results) {
+            totalNanos += result.nanos();
+            final var status = result.failed() ? "FAILED" : "ok";
+            System.out.printf(Locale.ROOT, "%-6s %9.2f ms  %s%n", status, result.nanos() / 1e6, result.source());
+            if (result.failed()) {
+                failures++;
+                System.out.println("         " + result.error());
+            }
+        }
+
+        System.out.printf(
+                Locale.ROOT,
+                "%d file(s), %d failed, %.2f ms total compile time%n",
+                results.size(),
+                failures,
+                totalNanos / 1e6);
+    }
+
+    static Path outputPath(Path source, OutputFormat format) {
+        final var fileName = source.getFileName().toString();
+        final var dot = fileName.lastIndexOf('.');
+        final var baseName = dot < 0 ? fileName : fileName.substring(0, dot);
+        return source.resolveSibling(baseName + format.getExtension());
+    }
+
+    private static boolean isSource(Path path) {
+        final var fileName = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return SOURCE_EXTENSIONS.stream().anyMatch(fileName::endsWith);
+    }
+
+    private Result compileOne(Path source) {
+        final var output = outputPath(source, options.getOutputFormat());
+        final var start = System.nanoTime();
+        try {
+            final var report = LLVMFacade.compile(source.toString(), output.toString(), options);
+            return new Result(source, output, System.nanoTime() - start, report, null);
+        } catch (IOException | RuntimeException e) {
+            return new Result(
+                    source,
+                    output,
+                    System.nanoTime() - start,
+                    null,
+                    e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+}
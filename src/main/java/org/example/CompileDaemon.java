@@ -0,0 +1,191 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+import org.example.llvm.CompileOptions;
+import org.example.llvm.CompileReport;
+import org.example.llvm.LLVMFacade;
+
+/**
+ * Keeps the compiler resident, so a request does not pay for JVM start-up, loading the parser classes and a cold JIT.
+ * Listens on a Unix domain socket or a loopback TCP port and serves every connection on its own virtual thread.
+ *
+ * <p>A request is one line with the arguments of a single {@link Main} compilation separated by tabs, with absolute
+ * paths. The answer starts with a status line, {@code OK queued=<ns> compile=<ns>}, {@code BUSY <reason>} or {@code
+ * ERROR <message>}, followed by the text report when {@code --report} was requested. A request of just
+ * {@code --shutdown} stops the daemon. A connection that sends no request line within ten seconds gets an {@code ERROR}
+ * and is closed.
+ */
+public class CompileDaemon {
+    private static final Logger logger = Logger.getLogger(CompileDaemon.class.getName());
+    private static final String SHUTDOWN = "--shutdown";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private final SocketAddress address;
+    private final CompileOptions defaults;
+    private final int queue;
+    // compilations running at once
+    private final Semaphore running;
+    // requests running or waiting; beyond that new ones are turned away instead of piling up
+    private final Semaphore admitted;
+    private volatile ServerSocketChannel server;
+
+    public CompileDaemon(SocketAddress address, CompileOptions defaults, int jobs, int queue) {
+        this.address = address;
+        this.defaults = defaults;
+        this.queue = queue;
+        this.running = new Semaphore(jobs);
+        this.admitted = new Semaphore(jobs + queue);
+    }
+
+    // tcp:PORT for a loopback TCP port, anything else is the path of a Unix domain socket
+    public static SocketAddress address(String value) {
+        if (value.startsWith("tcp:")) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(value.substring(4)));
+        }
+        return UnixDomainSocketAddress.of(value);
+    }
+
+    public void serve() throws IOException {
+        LLVMFacade.warmUp();
+        if (address instanceof UnixDomainSocketAddress unix) {
+            // left behind by a daemon that did not shut down cleanly
+            Files.deleteIfExists(unix.getPath());
+        }
+
+        // the timer is declared first so it is closed last, after every handler is done with it
+        try (var channel = open();
+                var timer = Executors.newSingleThreadScheduledExecutor();
+                var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            server = channel;
+            channel.bind(address);
+            logger.info("Compile daemon listening on " + address);
+            while (true) {
+                final SocketChannel client;
+                try {
+                    client = channel.accept();
+                } catch (ClosedChannelException e) {
+                    break;
+                }
+                executor.submit(() -> handle(client, timer));
+            }
+        } finally {
+            if (address instanceof UnixDomainSocketAddress unix) {
+                Files.deleteIfExists(unix.getPath());
+            }
+        }
+    }
+
+    private ServerSocketChannel open() throws IOException {
+        return address instanceof UnixDomainSocketAddress
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                : ServerSocketChannel.open();
+    }
+
+    private void handle(SocketChannel channel, ScheduledExecutorService timer) {
+        final var timedOut = new AtomicBoolean();
+        try (channel;
+                var reader = new BufferedReader(
+                        new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+                var writer = new PrintWriter(
+                        new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8))) {
+            // shutting the input down ends a blocked read on TCP and Unix domain sockets alike
+            final var timeout = timer.schedule(
+                    () -> {
+                        timedOut.set(true);
+                        channel.shutdownInput();
+                        return null;
+                    },
+                    REQUEST_TIMEOUT.toMillis(),
+                    TimeUnit.MILLISECONDS);
+            final var line = reader.readLine();
+            timeout.cancel(false);
+            if (timedOut.get()) {
+                writer.print("ERROR no request within " + REQUEST_TIMEOUT.toSeconds() + " s\n");
+            } else if (line != null) {
+                writer.print(respond(List.of(line.split("\t"))));
+            }
+        } catch (IOException e) {
+            logger.warning("Request failed: " + e.getMessage());
+        }
+    }
+
+    private String respond(List<String> args) throws IOException {
+        if (args.equals(List.of(SHUTDOWN))) {
+            server.close();
+            return "OK\n";
+        }
+
+        final var options = defaults.toBuilder();
+        final List<String> paths = new ArrayList<>();
+        boolean printReport = false;
+        Path reportFile = null;
+        for (String arg : args) {
+            if (Main.compileOption(arg, options)) {
+                continue;
+            } else if (arg.equals("--report")) {
+                printReport = true;
+            } else if (arg.startsWith("--report-json=")) {
+                reportFile = Path.of(Main.optionValue(arg));
+            } else if (arg.startsWith("--")) {
+                return "ERROR unsupported option in a daemon request: " + arg + "\n";
+            } else {
+                paths.add(arg);
+            }
+        }
+        if (paths.size() != 2) {
+            return "ERROR expected <input> <output>, got " + paths + "\n";
+        }
+
+        if (!admitted.tryAcquire()) {
+            return "BUSY " + queue + " request(s) already waiting\n";
+        }
+        try {
+            final var queuedAt = System.nanoTime();
+            running.acquire();
+            final var queued = System.nanoTime() - queuedAt;
+            try {
+                final var start = System.nanoTime();
+                final var report = LLVMFacade.compile(paths.get(0), paths.get(1), options.build());
+                final var compile = System.nanoTime() - start;
+                if (reportFile != null) {
+                    Files.writeString(reportFile, CompileReport.toJson(List.of(report)));
+                }
+                return "OK queued=" + queued + " compile=" + compile + "\n" + (printReport ? report.format() : "");
+            } catch (IOException | RuntimeException e) {
+                return "ERROR " + e.getClass().getSimpleName() + ": " + e.getMessage() + "\n";
+            } finally {
+                running.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERROR interrupted\n";
+        } finally {
+            admitted.release();
+        }
+    }
+}
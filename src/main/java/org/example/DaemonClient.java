@@ -0,0 +1,49 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import lombok.experimental.UtilityClass;
+
+// Thin client for CompileDaemon: forwards the arguments, prints the answer and turns its status into an exit code.
+@UtilityClass
+public class DaemonClient {
+    public int send(SocketAddress address, List<String> args) throws IOException {
+        try (var channel = SocketChannel.open(address);
+                var reader = new BufferedReader(
+                        new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+                var writer = new PrintWriter(
+                        new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8))) {
+            writer.print(
+                    String.join("\t", args.stream().map(DaemonClient::absolute).toList()) + "\n");
+            writer.flush();
+
+            final var status = reader.readLine();
+            if (status == null) {
+                System.err.println("ERROR no answer from the daemon");
+                return 1;
+            }
+            (status.startsWith("OK") ? System.out : System.err).println(status);
+            reader.lines().forEach(System.out::println);
+            return status.startsWith("OK") ? 0 : 1;
+        }
+    }
+
+    // the daemon runs in another working directory
+    private String absolute(String arg) {
+        if (arg.startsWith("--report-json=")) {
+            return "--report-json=" + Path.of(Main.optionValue(arg)).toAbsolutePath();
+        } else if (arg.startsWith("--llvm-bin=")) {
+            return "--llvm-bin=" + Path.of(Main.optionValue(arg)).toAbsolutePath();
+        }
+        return arg.startsWith("-") ? arg : Path.of(arg).toAbsolutePath().toString();
+    }
+}
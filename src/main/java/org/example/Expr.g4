@@ -5,7 +5,7 @@ prog
    ;
 
 expr
-   : (varDeclaration | arithmeticExpression | inputOutputExpression | arrayDeclaration | matrixDeclaration | arrayAssignement | function | ifStatement | loop) SEMICOLON
+   : (varDeclaration | arithmeticExpression | inputOutputExpression | arrayDeclaration | matrixDeclaration | arrayAssignement | function | ifStatement | loop | forLoop) SEMICOLON
    ;
 
 function
@@ -17,11 +17,21 @@ functionCall
    ;
 
 args
-   : (ID | INT_VALUE | FLOAT_VALUE | STRING_VALUE | BOOL_VALUE)
+   : (identifier | INT_VALUE | FLOAT_VALUE | STRING_VALUE | BOOL_VALUE)
    ;
 
 loop
-   : LOOP '(' ID ')' '{' loopBlock '}'
+   : LOOP '(' identifier ')' '{' loopBlock '}'
+   ;
+
+forLoop
+   // the counter takes every value from the first bound up to, but not including, the second
+   : FOR '(' identifier ASSIGN forBound TO forBound ')' '{' loopBlock '}'
+   ;
+
+forBound
+   : INT_VALUE
+   | identifier
    ;
 
 loopBlock
@@ -33,7 +43,7 @@ functionBlock
    ;
 
 ifStatement
-   : IF '(' ID ')' '{' ifBlock '}' (elseStatement)?
+   : IF '(' identifier ')' '{' ifBlock '}' (elseStatement)?
    ;
 
 ifBlock
@@ -45,15 +55,15 @@ elseStatement
    ;
 
 argsDeclaration
-   : (FLOAT | INT | BOOL | STRING) ID
+   : (FLOAT | INT | BOOL | STRING) identifier
    ;
 
 blockStmt
-   : (varDeclaration | arithmeticExpression | inputOutputExpression | arrayAssignement | ifStatement | loop | returnStmt) SEMICOLON
+   : (varDeclaration | arithmeticExpression | inputOutputExpression | arrayAssignement | ifStatement | loop | forLoop | returnStmt) SEMICOLON
    ;
 
 returnStmt
-   : RETURN (ID | INT_VALUE | FLOAT_VALUE | STRING_VALUE | BOOL_VALUE | arithmeticExpression | booleanExpression)?
+   : RETURN (identifier | INT_VALUE | FLOAT_VALUE | STRING_VALUE | BOOL_VALUE | arithmeticExpression | booleanExpression)?
    ;
 
 returnType
@@ -79,7 +89,7 @@ multiplicativeExpression
 expressionFactor
    : INT_VALUE
    | FLOAT_VALUE
-   | ID
+   | identifier
    ;
 
 booleanExpression
@@ -100,12 +110,12 @@ booleanEqualityExpression
    ;
 
 unaryExpression
-   : (NEG)* (BOOL_VALUE | ID)
+   : (NEG)* (BOOL_VALUE | identifier)
    ;
 
 inputOutputExpression
-   : READ '(' ID? ')' # read
-   | PRINT '(' (ID | arithmeticExpression | booleanExpression | STRING_VALUE) ')' # print
+   : READ '(' identifier? ')' # read
+   | PRINT '(' (identifier | arithmeticExpression | booleanExpression | STRING_VALUE) ')' # print
    ;
 
 varDeclaration
@@ -117,39 +127,39 @@ varDeclaration
    ;
 
 floatDeclaration
-   : FLOAT ID floatAssignement?
+   : FLOAT identifier floatAssignement?
    ;
 
 intDeclaration
-   : INT ID intAssignement?
+   : INT identifier intAssignement?
    ;
 
 arrayDeclaration
-   : ARRAY (FLOAT | INT) ID (arrayInitialization | arrayMalloc)?
+   : ARRAY (FLOAT | INT) identifier (arrayInitialization | arrayMalloc | arrayOperation)?
    ;
 
 matrixDeclaration
-   : MATRIX (FLOAT | INT) ID (matrixInitialization)?
+   : MATRIX (FLOAT | INT) identifier (matrixInitialization | matrixProduct)?
    ;
 
 boolDeclaration
-   : BOOL ID boolAssignement?
+   : BOOL identifier boolAssignement?
    ;
 
 stringDeclaration
-   : STRING ID stringAssignement?
+   : STRING identifier stringAssignement?
    ;
 
 dynamicVarDeclaration
-   : VAR ID dynamicVarAssignement
+   : VAR identifier dynamicVarAssignement
    ;
 
 floatAssignement
-   : ASSIGN (FLOAT_VALUE | arithmeticExpression | arrayValueByIndex)
+   : ASSIGN (FLOAT_VALUE | arithmeticExpression | arrayValueByIndex | matrixValueByIndex | arrayReduction)
    ;
 
 intAssignement
-   : ASSIGN (INT_VALUE | arithmeticExpression | arrayValueByIndex | matrixValueByIndex | functionCall)
+   : ASSIGN (INT_VALUE | arithmeticExpression | arrayValueByIndex | matrixValueByIndex | functionCall | arrayReduction)
    ;
 
 arrayInitialization
@@ -165,16 +175,16 @@ matrixRow
    ;
 
 arrayValueByIndex
-   : ID '[' arrayIndex ']'
+   : identifier '[' arrayIndex ']'
    ;
 
 matrixValueByIndex
-   : ID '[' INT_VALUE ']' '[' INT_VALUE ']'
+   : identifier '[' INT_VALUE ']' '[' INT_VALUE ']'
    ;
 
 arrayIndex
    : INT_VALUE
-   | ID
+   | identifier
    | arithmeticExpression
    ;
 
@@ -206,6 +216,35 @@ arrayMalloc
    : ASSIGN '[' INT_VALUE ']'
    ;
 
+arrayOperation
+   // element-wise over whole arrays, a scalar operand is applied to every element
+   : ASSIGN arrayOperand (ADDITIVE_OPERATOR | MULTIPLICATIVE_OPERATOR) arrayOperand
+   ;
+
+arrayOperand
+   : identifier
+   | INT_VALUE
+   | FLOAT_VALUE
+   ;
+
+matrixProduct
+   : ASSIGN identifier MULTIPLICATIVE_OPERATOR identifier
+   ;
+
+arrayReduction
+   : SUM '(' identifier ')'
+   | DOT '(' identifier ',' identifier ')'
+   ;
+
+identifier
+   // sum, dot, for and to are keywords only where a reduction or for loop starts, elsewhere they name variables
+   : ID
+   | SUM
+   | DOT
+   | FOR
+   | TO
+   ;
+
 SEMICOLON
    : ';'
    ;
@@ -290,6 +329,22 @@ LOOP
    : 'repeat'
    ;
 
+FOR
+   : 'for'
+   ;
+
+TO
+   : 'to'
+   ;
+
+SUM
+   : 'sum'
+   ;
+
+DOT
+   : 'dot'
+   ;
+
 INT_VALUE
    : [0-9]+
    ;
@@ -1,10 +1,234 @@
 package org.example;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.logging.Logger;
+import org.example.cache.CompilationCache;
+import org.example.llvm.CompilationException;
+import org.example.llvm.CompileOptions;
+import org.example.llvm.CompileReport;
+import org.example.llvm.IncrementalCompiler;
 import org.example.llvm.LLVMFacade;
+import org.example.llvm.OutputFormat;
+import org.example.llvm.OutputMode;
+import org.example.llvm.ParsingMode;
 
+// Usage:
+//   Main [options] <input> <output>
+//   Main --batch [--jobs=N] [options] <file or directory>...
+//   Main --watch [options] <input> <output>   recompile incrementally whenever input changes
+//   Main --daemon=SOCKET|tcp:PORT [--jobs=N] [--queue=N] [--cache-dir=DIR]   keep the compiler resident
+//   Main --connect=SOCKET|tcp:PORT [options] <input> <output>   compile through a running daemon
+// Options:
+//   --parse-mode=two-stage|sll|ll
+//   --no-constant-folding
+//   --no-dce                            keep unreachable blocks, unused values and globals in the output
+//   --mem2reg
+//   --stream                            map the source file and parse it statement by statement
+//   -O0..-O3                            run opt at this level on the output
+//   --emit=ll|bc|obj|exe                output format; obj and exe run the LLVM tools (default -O0)
+//   --output-mode=printf|buffered       print with one printf call each or into a buffer flushed when full and at exit
+//   --llvm-bin=DIR                      where opt, llc and clang are, instead of PATH
+//   --unroll=N                          ask LLVM to unroll repeat and for loops N times
+//   --heap-array-threshold=BYTES        calloc arrays and matrices larger than this (default 16384)
+//   --cache-dir=DIR [--cache-size=MB]   reuse output for unchanged sources
+//   --report                            print time, allocation and output size per compilation phase
+//   --report-json=FILE                  write the same reports as a JSON array
 public class Main {
-    public static void main(String[] args) throws IOException {
-        LLVMFacade.compile(args[0], args[1]);
+    private static final Logger logger = Logger.getLogger(Main.class.getName());
+    private static final long DEFAULT_CACHE_MEGABYTES = 256;
+    private static final int DEFAULT_QUEUE = 64;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final var options = CompileOptions.builder();
+        final List<String> positional = new ArrayList<>();
+        boolean batch = false;
+        boolean watch = false;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        Path cacheDirectory = null;
+        long cacheMegabytes = DEFAULT_CACHE_MEGABYTES;
+        boolean printReport = false;
+        Path reportFile = null;
+        String daemonAddress = null;
+        String connectAddress = null;
+        int queue = DEFAULT_QUEUE;
+
+        for (String arg : args) {
+            if (arg.equals("--batch")) {
+                batch = true;
+            } else if (arg.equals("--watch")) {
+                watch = true;
+            } else if (arg.startsWith("--jobs=")) {
+                jobs = Integer.parseInt(optionValue(arg));
+            } else if (compileOption(arg, options)) {
+                continue;
+            } else if (arg.startsWith("--daemon=")) {
+                daemonAddress = optionValue(arg);
+            } else if (arg.startsWith("--queue=")) {
+                queue = Integer.parseInt(optionValue(arg));
+            } else if (arg.startsWith("--connect=")) {
+                connectAddress = optionValue(arg);
+            } else if (arg.startsWith("--cache-dir=")) {
+                cacheDirectory = Path.of(optionValue(arg));
+            } else if (arg.startsWith("--cache-size=")) {
+                cacheMegabytes = Long.parseLong(optionValue(arg));
+            } else if (arg.equals("--report")) {
+                printReport = true;
+            } else if (arg.startsWith("--report-json=")) {
+                reportFile = Path.of(optionValue(arg));
+            } else {
+                positional.add(arg);
+            }
+        }
+
+        if (connectAddress != null) {
+            final var request = Arrays.stream(args)
+                    .filter(arg -> !arg.startsWith("--connect="))
+                    .toList();
+            System.exit(DaemonClient.send(CompileDaemon.address(connectAddress), request));
+        }
+
+        final CompilationCache cache =
+                cacheDirectory == null ? null : new CompilationCache(cacheDirectory, cacheMegabytes * 1024 * 1024);
+        options.cache(cache);
+
+        if (daemonAddress != null) {
+            new CompileDaemon(CompileDaemon.address(daemonAddress), options.build(), jobs, queue).serve();
+            return;
+        }
+
+        if (batch) {
+            batch(positional, jobs, options.build(), printReport, reportFile);
+            return;
+        }
+
+        if (watch) {
+            watch(Path.of(positional.get(0)), positional.get(1), options.build());
+            return;
+        }
+
+        final CompileReport report;
+        try {
+            report = LLVMFacade.compile(positional.get(0), positional.get(1), options.build());
+        } catch (CompilationException e) {
+            logger.severe(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        writeReports(List.of(report), printReport, reportFile);
+        printCacheStats(cache);
+    }
+
+    // Flags that only affect how a single file is compiled; also accepted in daemon requests.
+    static boolean compileOption(String arg, CompileOptions.CompileOptionsBuilder options) {
+        if (arg.startsWith("--parse-mode=")) {
+            options.parsingMode(
+                    ParsingMode.valueOf(optionValue(arg).replace('-', '_').toUpperCase(Locale.ROOT)));
+        } else if (arg.equals("--no-constant-folding")) {
+            options.constantFolding(false);
+        } else if (arg.equals("--no-dce")) {
+            options.deadCodeElimination(false);
+        } else if (arg.equals("--mem2reg")) {
+            options.promoteLocals(true);
+        } else if (arg.equals("--stream")) {
+            options.streamingInput(true);
+        } else if (arg.matches("-O[0-3]")) {
+            options.optimizationLevel(arg.charAt(2) - '0');
+        } else if (arg.startsWith("--emit=")) {
+            options.outputFormat(OutputFormat.of(optionValue(arg)));
+        } else if (arg.startsWith("--output-mode=")) {
+            options.outputMode(OutputMode.of(optionValue(arg)));
+        } else if (arg.startsWith("--llvm-bin=")) {
+            options.llvmBin(optionValue(arg));
+        } else if (arg.startsWith("--unroll=")) {
+            options.loopUnrollCount(Integer.parseInt(optionValue(arg)));
+        } else if (arg.startsWith("--heap-array-threshold=")) {
+            options.heapArrayThreshold(Long.parseLong(optionValue(arg)));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static void batch(
+            List<String> paths, int jobs, CompileOptions options, boolean printReport, Path reportFile)
+            throws IOException, InterruptedException {
+        final var roots = paths.stream().map(Path::of).toList();
+        final var sources = BatchCompiler.collectSources(roots);
+        final var results = new BatchCompiler(jobs, options).compile(sources);
+        BatchCompiler.printSummary(results);
+        writeReports(
+                results.stream()
+                        .map(BatchCompiler.Result::report)
+                        .filter(Objects::nonNull)
+                        .toList(),
+                printReport,
+                reportFile);
+        printCacheStats(options.getCache());
+        if (results.stream().anyMatch(BatchCompiler.Result::failed)) {
+            System.exit(1);
+        }
+    }
+
+    private static void watch(Path input, String output, CompileOptions options)
+            throws IOException, InterruptedException {
+        final IncrementalCompiler compiler;
+        try {
+            compiler = new IncrementalCompiler(output, options);
+        } catch (CompilationException e) {
+            logger.severe(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        final var directory = input.toAbsolutePath().getParent();
+        try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            while (true) {
+                final long start = System.nanoTime();
+                try {
+                    final int statements = compiler.compile(Files.readString(input));
+                    logger.info(String.format(
+                            "%s: %d statement(s) re-emitted in %.1f ms",
+                            input, statements, (System.nanoTime() - start) / 1e6));
+                } catch (CompilationException e) {
+                    logger.severe(e.getMessage());
+                }
+
+                final var key = watcher.take();
+                key.pollEvents();
+                key.reset();
+            }
+        }
+    }
+
+    private static void writeReports(List<CompileReport> reports, boolean print, Path file) throws IOException {
+        if (print) {
+            reports.forEach(report -> System.out.print(report.format()));
+        }
+        if (file != null) {
+            Files.writeString(file, CompileReport.toJson(reports));
+        }
+    }
+
+    private static void printCacheStats(CompilationCache cache) {
+        if (cache == null) {
+            return;
+        }
+        final var stats = cache.stats();
+        System.out.printf(
+                "cache: %d hit(s), %d miss(es), %d eviction(s), %d entries, %d bytes%n",
+                stats.hits(), stats.misses(), stats.evictions(), stats.entries(), stats.bytes());
+    }
+
+    static String optionValue(String arg) {
+        return arg.substring(arg.indexOf('=') + 1);
     }
 }
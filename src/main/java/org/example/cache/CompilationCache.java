@@ -0,0 +1,160 @@
+package org.example.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of compiler output ({@code .ll}, bitcode or native code) keyed by a SHA-256 of the source bytes, the
+ * compiler version and the compile options. An entry is named after its key and the output's extension. The total
+ * size is bounded; the least recently used entries are evicted first, with the file modification time serving as the
+ * access time so the order survives restarts. Safe to share between threads.
+ */
+public class CompilationCache {
+    private static final Logger logger = Logger.getLogger(CompilationCache.class.getName());
+    // the hex SHA-256 followed by the extension of the output format, none for executables
+    private static final Pattern ENTRY = Pattern.compile("[0-9a-f]{64}(\\.\\w+)?");
+
+    private final Path directory;
+    private final long maxBytes;
+    private final Map<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long totalBytes;
+
+    public record Stats(long hits, long misses, long evictions, int entries, long bytes) {}
+
+    public CompilationCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        loadIndex();
+    }
+
+    // The key is also the entry's file name, so outputs of different formats never share a file or an extension.
+    public String key(ByteBuffer source, String compilerVersion, String options, String extension) {
+        try {
+            final var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(compilerVersion.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(options.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(source.duplicate());
+            return HexFormat.of().formatHex(digest.digest()) + extension;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Copies the cached output for key to output; false on a miss.
+    public boolean copyTo(String key, Path output) throws IOException {
+        final var entry = entryPath(key);
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                misses.incrementAndGet();
+                return false;
+            }
+        }
+
+        try {
+            Files.copy(entry, output, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // evicted by another thread or process after the lookup
+            synchronized (this) {
+                final var size = entries.remove(key);
+                totalBytes -= size == null ? 0 : size;
+            }
+            misses.incrementAndGet();
+            return false;
+        }
+        hits.incrementAndGet();
+        return true;
+    }
+
+    public void store(String key, Path output) throws IOException {
+        final var entry = entryPath(key);
+        final var temporary = Files.createTempFile(directory, key, ".tmp");
+        try {
+            Files.copy(output, temporary, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        synchronized (this) {
+            final var previous = entries.put(key, Files.size(entry));
+            totalBytes += entries.get(key) - (previous == null ? 0 : previous);
+            evict();
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits.get(), misses.get(), evictions.get(), entries.size(), totalBytes);
+    }
+
+    private void evict() {
+        final var iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && entries.size() > 1 && iterator.hasNext()) {
+            final var eldest = iterator.next();
+            try {
+                Files.deleteIfExists(entryPath(eldest.getKey()));
+            } catch (IOException e) {
+                logger.warning("Could not evict cache entry " + eldest.getKey() + ": " + e.getMessage());
+                continue;
+            }
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> ENTRY.matcher(file.getFileName().toString()).matches())
+                    .sorted((first, second) -> lastModified(first).compareTo(lastModified(second)))
+                    .forEach(file -> {
+                        final long size = size(file);
+                        entries.put(file.getFileName().toString(), size);
+                        totalBytes += size;
+                    });
+        }
+        evict();
+    }
+
+    private Path entryPath(String key) {
+        return directory.resolve(key);
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.example.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+
+@Getter
+public class BasicBlock {
+    // null for the unnamed entry block
+    private final String label;
+    private final List<Instruction> instructions = new ArrayList<>();
+
+    public BasicBlock(String label) {
+        this.label = label;
+    }
+
+    public void add(Instruction instruction) {
+        instructions.add(instruction);
+    }
+
+    public Instruction terminator() {
+        if (instructions.isEmpty()) {
+            return null;
+        }
+        final var last = instructions.getLast();
+        return last.getOpcode().isTerminator() ? last : null;
+    }
+
+    public List<BasicBlock> successors() {
+        final var terminator = terminator();
+        if (terminator == null || terminator.getTargets() == null) {
+            return List.of();
+        }
+        return List.of(terminator.getTargets());
+    }
+
+    @Override
+    public String toString() {
+        return label == null ? "entry" : label;
+    }
+}
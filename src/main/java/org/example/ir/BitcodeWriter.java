@@ -0,0 +1,858 @@
+package org.example.ir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.example.type.Constant;
+import org.example.type.Value;
+
+/**
+ * Serializes an {@link IrModule} to LLVM bitcode, the binary form of what {@link IrPrinter} writes as text, so
+ * {@code --emit=bc} needs no LLVM tool. It writes the same module with the fewest parts the format allows: version 2
+ * with the names in a string table, typed pointers, only unabbreviated records and every constant in the module's
+ * constant block. All of it goes through one buffered {@link FileChannel}; a writer writes a single module.
+ */
+public class BitcodeWriter {
+    private static final String PRODUCER = "testy";
+
+    // block ids
+    private static final int MODULE_BLOCK = 8;
+    private static final int PARAMATTR_BLOCK = 9;
+    private static final int PARAMATTR_GROUP_BLOCK = 10;
+    private static final int CONSTANTS_BLOCK = 11;
+    private static final int FUNCTION_BLOCK = 12;
+    private static final int IDENTIFICATION_BLOCK = 13;
+    private static final int VALUE_SYMTAB_BLOCK = 14;
+    private static final int METADATA_BLOCK = 15;
+    private static final int METADATA_ATTACHMENT_BLOCK = 16;
+    private static final int TYPE_BLOCK = 17;
+    private static final int METADATA_KIND_BLOCK = 22;
+    private static final int STRTAB_BLOCK = 23;
+
+    // record codes, by block
+    private static final int IDENTIFICATION_STRING = 1;
+    private static final int IDENTIFICATION_EPOCH = 2;
+    private static final int MODULE_VERSION = 1;
+    private static final int MODULE_GLOBALVAR = 7;
+    private static final int MODULE_FUNCTION = 8;
+    private static final int PARAMATTR_ENTRY = 2;
+    private static final int PARAMATTR_GROUP_ENTRY = 3;
+    private static final int TYPE_NUMENTRY = 1;
+    private static final int TYPE_VOID = 2;
+    private static final int TYPE_DOUBLE = 4;
+    private static final int TYPE_INTEGER = 7;
+    private static final int TYPE_POINTER = 8;
+    private static final int TYPE_ARRAY = 11;
+    private static final int TYPE_FUNCTION = 21;
+    private static final int CONSTANT_SETTYPE = 1;
+    private static final int CONSTANT_NULL = 2;
+    private static final int CONSTANT_UNDEF = 3;
+    private static final int CONSTANT_INTEGER = 4;
+    private static final int CONSTANT_FLOAT = 6;
+    private static final int CONSTANT_AGGREGATE = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_CAST = 11;
+    private static final int CONSTANT_INBOUNDS_GEP = 20;
+    private static final int CONSTANT_DATA = 22;
+    private static final int METADATA_STRING = 1;
+    private static final int METADATA_VALUE = 2;
+    private static final int METADATA_NODE = 3;
+    private static final int METADATA_DISTINCT_NODE = 5;
+    private static final int METADATA_KIND = 6;
+    private static final int METADATA_ATTACHMENT = 11;
+    private static final int FUNCTION_DECLAREBLOCKS = 1;
+    private static final int FUNCTION_BINOP = 2;
+    private static final int FUNCTION_CAST = 3;
+    private static final int FUNCTION_RET = 10;
+    private static final int FUNCTION_BR = 11;
+    private static final int FUNCTION_PHI = 16;
+    private static final int FUNCTION_ALLOCA = 19;
+    private static final int FUNCTION_LOAD = 20;
+    private static final int FUNCTION_CMP = 28;
+    private static final int FUNCTION_SELECT = 29;
+    private static final int FUNCTION_CALL = 34;
+    private static final int FUNCTION_GEP = 43;
+    private static final int FUNCTION_STORE = 44;
+    private static final int SYMTAB_ENTRY = 1;
+    private static final int SYMTAB_BLOCK_ENTRY = 2;
+    private static final int STRTAB_BLOB = 1;
+
+    private static final int LINKAGE_PRIVATE = 9;
+    // the attribute group applies to the function itself
+    private static final long FUNCTION_INDEX = 0xFFFFFFFFL;
+    // the alloca's type is its allocated type, not the pointer
+    private static final int ALLOCA_EXPLICIT_TYPE = 1 << 6;
+    // the call names its function type
+    private static final int CALL_EXPLICIT_TYPE = 1 << 15;
+    private static final Map<String, Integer> ATTRIBUTES =
+            Map.of("alwaysinline", 2, "noinline", 14, "noreturn", 17, "nounwind", 18);
+
+    private final BitstreamWriter stream;
+    private final BitstreamWriter.Operands operands = new BitstreamWriter.Operands();
+    private final Map<IrType, Integer> types = new LinkedHashMap<>();
+    // global variables and functions by name, numbered in the order of their records
+    private final Map<String, Integer> globals = new HashMap<>();
+    private final Map<String, IrType.FunctionOf> functionTypes = new HashMap<>();
+    private final Map<ConstantText, LiteralParser.Literal> parsed = new HashMap<>();
+    private final Map<LiteralParser.Literal, Integer> constants = new LinkedHashMap<>();
+    // metadata strings and values, numbered before the nodes
+    private final Map<Object, Integer> metadataOperands = new LinkedHashMap<>();
+    private final List<LiteralParser.Node> nodes = new ArrayList<>();
+    private final Map<String, Integer> kinds = new LinkedHashMap<>();
+    // function attributes as printed, e.g. "nounwind", each written as one group and one list
+    private final Map<String, Integer> attributeLists = new LinkedHashMap<>();
+    private final ByteArrayOutputStream strtab = new ByteArrayOutputStream();
+    private int firstConstant;
+    // set once everything is numbered, a value or type first seen after that has no record to refer to
+    private boolean enumerated;
+
+    public BitcodeWriter(FileChannel channel) {
+        this.stream = new BitstreamWriter(channel);
+    }
+
+    public void write(IrModule module) throws IOException {
+        enumerate(module);
+
+        stream.magic();
+        stream.enterBlock(IDENTIFICATION_BLOCK, 5);
+        stream.record(IDENTIFICATION_STRING, chars(PRODUCER));
+        stream.record(IDENTIFICATION_EPOCH, 0);
+        stream.exitBlock();
+
+        stream.enterBlock(MODULE_BLOCK, 3);
+        // 2: operands are relative to the instruction, names are in the string table
+        stream.record(MODULE_VERSION, 2);
+        writeAttributes();
+        writeTypes();
+        for (var global : module.getGlobals().values()) {
+            final var name = name(global.name());
+            stream.record(
+                    MODULE_GLOBALVAR,
+                    name[0],
+                    name[1],
+                    type(global.type()),
+                    // bit 1: the type is the value type rather than the pointer
+                    (global.constant() ? 1 : 0) | 2,
+                    constant(global.type(), global.initializer()) + 1,
+                    global.isPrivate() ? LINKAGE_PRIVATE : 0,
+                    0,
+                    0,
+                    0,
+                    0,
+                    global.isPrivate() ? 1 : 0);
+        }
+        for (var declaration : module.getDeclarations().entrySet()) {
+            writeFunctionRecord(declaration.getKey(), true, null);
+        }
+        for (var function : module.getFunctions()) {
+            writeFunctionRecord(function.getName(), false, function.getAttributes());
+        }
+        writeConstants();
+        writeMetadata();
+        for (var function : module.getFunctions()) {
+            writeFunction(function);
+        }
+        stream.exitBlock();
+
+        stream.enterBlock(STRTAB_BLOCK, 3);
+        stream.blob(stream.defineBlobAbbreviation(STRTAB_BLOB), strtab.toByteArray());
+        stream.exitBlock();
+        stream.flush();
+    }
+
+    // Numbers every type, global, constant and metadata operand the records refer to, in the order they are written.
+    private void enumerate(IrModule module) {
+        for (var name : module.getGlobals().keySet()) {
+            globals.put(name, globals.size());
+        }
+        module.getDeclarations().forEach((name, type) -> {
+            globals.put(name, globals.size());
+            functionTypes.put(name, type);
+        });
+        for (var function : module.getFunctions()) {
+            globals.put(function.getName(), globals.size());
+            functionTypes.put(function.getName(), functionType(function));
+        }
+        firstConstant = globals.size();
+
+        functionTypes.values().forEach(this::type);
+        for (var global : module.getGlobals().values()) {
+            type(global.type());
+            constant(global.type(), global.initializer());
+        }
+        for (var function : module.getFunctions()) {
+            for (var block : function.getBlocks()) {
+                for (var instruction : block.getInstructions()) {
+                    enumerate(instruction);
+                }
+            }
+            if (function.getAttributes() != null) {
+                attributeLists.putIfAbsent(function.getAttributes(), attributeLists.size());
+            }
+        }
+
+        for (var text : module.getMetadata()) {
+            final var node = LiteralParser.node(text);
+            for (var operand : node.operands()) {
+                if (operand instanceof LiteralParser.Literal literal) {
+                    constant(literal);
+                }
+                if (!(operand instanceof LiteralParser.NodeReference)) {
+                    metadataOperands.putIfAbsent(operand, metadataOperands.size());
+                }
+            }
+            nodes.add(node);
+        }
+        enumerated = true;
+    }
+
+    private void enumerate(Instruction instruction) {
+        if (instruction.getType() != null) {
+            type(instruction.getType());
+        }
+        type(resultType(instruction));
+        final var values = instruction.getOperands();
+        for (int i = 0; i < values.length; i++) {
+            final var type = operandType(instruction, i);
+            type(type);
+            if (values[i] instanceof Constant constant) {
+                constant(type, constant.getName());
+            }
+        }
+        if (instruction.getOpcode() == Opcode.ALLOCA) {
+            constant(IrType.I32, "1");
+        }
+        if (instruction.getMetadata() != null) {
+            for (var attachment : LiteralParser.attachments(instruction.getMetadata())) {
+                kinds.putIfAbsent(attachment.kind(), kinds.size());
+            }
+        }
+    }
+
+    private int type(IrType type) {
+        final var id = types.get(type);
+        if (id != null) {
+            return id;
+        }
+        if (enumerated) {
+            throw new IllegalStateException("Type " + type + " was not numbered");
+        }
+        // contained types first, the type block may only refer back
+        switch (type) {
+            case IrType.ArrayOf array -> type(array.element());
+            case IrType.Pointer pointer -> type(pointer.pointee());
+            case IrType.FunctionOf function -> {
+                type(function.returnType());
+                function.parameters().forEach(this::type);
+            }
+            case IrType.Primitive primitive -> {}
+        }
+        types.put(type, types.size());
+        return types.size() - 1;
+    }
+
+    private int constant(IrType type, String text) {
+        return constant(
+                parsed.computeIfAbsent(new ConstantText(type, text), key -> LiteralParser.constant(type, text)));
+    }
+
+    private int constant(LiteralParser.Literal literal) {
+        if (literal instanceof LiteralParser.GlobalReference reference) {
+            type(reference.type());
+            return global(reference.name());
+        }
+        final var id = constants.get(literal);
+        if (id != null) {
+            return id;
+        }
+        if (enumerated) {
+            throw new IllegalStateException("Constant " + literal + " was not numbered");
+        }
+        switch (literal) {
+            case LiteralParser.Aggregate aggregate -> aggregate.elements().forEach(this::constant);
+            case LiteralParser.Cast cast -> constant(cast.operand());
+            case LiteralParser.GetElementPtr pointer -> {
+                type(pointer.source());
+                pointer.operands().forEach(this::constant);
+            }
+            default -> {}
+        }
+        type(literal.type());
+        final int number = firstConstant + constants.size();
+        constants.put(literal, number);
+        return number;
+    }
+
+    private int global(String name) {
+        final var id = globals.get(name);
+        if (id == null) {
+            throw new IllegalArgumentException("Unknown global @" + name);
+        }
+        return id;
+    }
+
+    private IrType.FunctionOf calleeType(Instruction instruction) {
+        final var type = functionTypes.get(instruction.getCallee());
+        if (type == null) {
+            throw new IllegalArgumentException("Call to undeclared function @" + instruction.getCallee());
+        }
+        return type;
+    }
+
+    private static IrType.FunctionOf functionType(IrFunction function) {
+        final var parameters = new ArrayList<IrType>();
+        for (var parameter : function.getParameters()) {
+            parameters.add(IrType.of(parameter.getType()));
+        }
+        return new IrType.FunctionOf(function.getReturnType(), parameters, false);
+    }
+
+    // The type of operand i, which the textual form spells out next to it or leaves implied by the instruction.
+    private static IrType operandType(Instruction instruction, int i) {
+        final var type = instruction.getType();
+        return switch (instruction.getOpcode()) {
+            case LOAD -> type.pointer();
+            case STORE -> i == 0 ? type : type.pointer();
+            case GETELEMENTPTR, BITCAST, TRUNC, ZEXT, FPTOUI, CALL -> instruction
+                    .getOperandTypes()[i];
+            case SELECT -> i == 0 ? IrType.I1 : type;
+            case BR -> IrType.I1;
+            default -> type;
+        };
+    }
+
+    // Void when the instruction defines no value and takes no value number.
+    private IrType resultType(Instruction instruction) {
+        final var type = instruction.getType();
+        return switch (instruction.getOpcode()) {
+            case ALLOCA -> type.pointer();
+            case ICMP, FCMP -> IrType.I1;
+            case GETELEMENTPTR -> {
+                var element = type;
+                for (int i = 2; i < instruction.getOperands().length; i++) {
+                    element = ((IrType.ArrayOf) element).element();
+                }
+                yield element.pointer();
+            }
+            case CALL -> calleeType(instruction).returnType();
+            case STORE, BR, RET -> IrType.VOID;
+            default -> type;
+        };
+    }
+
+    private void writeAttributes() throws IOException {
+        if (attributeLists.isEmpty()) {
+            return;
+        }
+        stream.enterBlock(PARAMATTR_GROUP_BLOCK, 3);
+        for (var list : attributeLists.entrySet()) {
+            operands.clear().add(list.getValue() + 1).add(FUNCTION_INDEX);
+            for (var name : list.getKey().split(" +")) {
+                final var kind = ATTRIBUTES.get(name);
+                if (kind == null) {
+                    throw new IllegalArgumentException("Unknown function attribute " + name);
+                }
+                // 0: an attribute without a value
+                operands.add(0).add(kind);
+            }
+            stream.record(PARAMATTR_GROUP_ENTRY, operands);
+        }
+        stream.exitBlock();
+
+        stream.enterBlock(PARAMATTR_BLOCK, 3);
+        for (int group : attributeLists.values()) {
+            stream.record(PARAMATTR_ENTRY, group + 1);
+        }
+        stream.exitBlock();
+    }
+
+    private void writeTypes() throws IOException {
+        stream.enterBlock(TYPE_BLOCK, 4);
+        stream.record(TYPE_NUMENTRY, types.size());
+        for (var type : types.keySet()) {
+            switch (type) {
+                case IrType.Primitive primitive -> {
+                    if (type == IrType.VOID) {
+                        stream.record(TYPE_VOID);
+                    } else if (type == IrType.DOUBLE) {
+                        stream.record(TYPE_DOUBLE);
+                    } else {
+                        stream.record(TYPE_INTEGER, LiteralParser.width(primitive));
+                    }
+                }
+                case IrType.Pointer pointer -> stream.record(TYPE_POINTER, type(pointer.pointee()), 0);
+                case IrType.ArrayOf array -> stream.record(TYPE_ARRAY, array.length(), type(array.element()));
+                case IrType.FunctionOf function -> {
+                    operands.clear().add(function.varargs() ? 1 : 0).add(type(function.returnType()));
+                    for (var parameter : function.parameters()) {
+                        operands.add(type(parameter));
+                    }
+                    stream.record(TYPE_FUNCTION, operands);
+                }
+            }
+        }
+        stream.exitBlock();
+    }
+
+    private void writeFunctionRecord(String name, boolean declaration, String attributes) throws IOException {
+        final var offset = name(name);
+        stream.record(
+                MODULE_FUNCTION,
+                offset[0],
+                offset[1],
+                type(functionTypes.get(name)),
+                0,
+                declaration ? 1 : 0,
+                0,
+                attributes == null ? 0 : attributeLists.get(attributes) + 1,
+                0,
+                0,
+                0,
+                0,
+                0);
+    }
+
+    private void writeConstants() throws IOException {
+        if (constants.isEmpty()) {
+            return;
+        }
+        stream.enterBlock(CONSTANTS_BLOCK, 4);
+        // the type constants have until the first SETTYPE
+        IrType current = IrType.I32;
+        for (var literal : constants.keySet()) {
+            if (!literal.type().equals(current)) {
+                current = literal.type();
+                stream.record(CONSTANT_SETTYPE, type(current));
+            }
+            operands.clear();
+            switch (literal) {
+                case LiteralParser.Int integer -> stream.record(CONSTANT_INTEGER, signed(integer.value()));
+                case LiteralParser.Real real -> stream.record(CONSTANT_FLOAT, real.bits());
+                case LiteralParser.Null ignored -> stream.record(CONSTANT_NULL);
+                case LiteralParser.Undef ignored -> stream.record(CONSTANT_UNDEF);
+                case LiteralParser.Text text -> {
+                    if (!(text.type() instanceof IrType.ArrayOf array)
+                            || array.element() != IrType.I8
+                            || array.length() != text.bytes().length()) {
+                        throw new IllegalArgumentException(text.bytes().length() + " characters as " + text.type());
+                    }
+                    for (int i = 0; i < text.bytes().length(); i++) {
+                        operands.add(text.bytes().charAt(i));
+                    }
+                    stream.record(CONSTANT_STRING, operands);
+                }
+                case LiteralParser.Aggregate aggregate -> writeAggregate(aggregate);
+                case LiteralParser.Cast cast -> stream.record(
+                        CONSTANT_CAST,
+                        castCode(Opcode.BITCAST),
+                        type(cast.operand().type()),
+                        constant(cast.operand()));
+                case LiteralParser.GetElementPtr pointer -> {
+                    operands.add(type(pointer.source()));
+                    for (var operand : pointer.operands()) {
+                        operands.add(type(operand.type())).add(constant(operand));
+                    }
+                    stream.record(CONSTANT_INBOUNDS_GEP, operands);
+                }
+                case LiteralParser.GlobalReference reference -> throw new IllegalStateException("Not a constant");
+            }
+        }
+        stream.exitBlock();
+    }
+
+    // Arrays of plain numbers are written as their raw elements, like LLVM writes a ConstantDataArray.
+    private void writeAggregate(LiteralParser.Aggregate aggregate) throws IOException {
+        final var element = ((IrType.ArrayOf) aggregate.type()).element();
+        final boolean data =
+                element == IrType.I8 || element == IrType.I32 || element == IrType.I64 || element == IrType.DOUBLE;
+        for (var literal : aggregate.elements()) {
+            if (data && element != IrType.DOUBLE && literal instanceof LiteralParser.Int integer) {
+                final int width = LiteralParser.width(element);
+                operands.add(width == Long.SIZE ? integer.value() : integer.value() & ((1L << width) - 1));
+            } else if (data && element == IrType.DOUBLE && literal instanceof LiteralParser.Real real) {
+                operands.add(real.bits());
+            } else {
+                writeElements(aggregate);
+                return;
+            }
+        }
+        stream.record(CONSTANT_DATA, operands);
+    }
+
+    private void writeElements(LiteralParser.Aggregate aggregate) throws IOException {
+        operands.clear();
+        for (var literal : aggregate.elements()) {
+            operands.add(constant(literal));
+        }
+        stream.record(CONSTANT_AGGREGATE, operands);
+    }
+
+    private void writeMetadata() throws IOException {
+        if (!kinds.isEmpty()) {
+            stream.enterBlock(METADATA_KIND_BLOCK, 3);
+            for (var kind : kinds.entrySet()) {
+                operands.clear().add(kind.getValue());
+                for (byte b : kind.getKey().getBytes(StandardCharsets.UTF_8)) {
+                    operands.add(b & 0xFF);
+                }
+                stream.record(METADATA_KIND, operands);
+            }
+            stream.exitBlock();
+        }
+        if (nodes.isEmpty()) {
+            return;
+        }
+
+        stream.enterBlock(METADATA_BLOCK, 3);
+        for (var operand : metadataOperands.keySet()) {
+            if (operand instanceof LiteralParser.Literal literal) {
+                stream.record(METADATA_VALUE, type(literal.type()), constant(literal));
+            } else {
+                stream.record(METADATA_STRING, chars((String) operand));
+            }
+        }
+        for (var node : nodes) {
+            operands.clear();
+            for (var operand : node.operands()) {
+                // node numbers are shifted by one, 0 is a missing operand
+                operands.add(metadata(operand) + 1);
+            }
+            stream.record(node.distinct() ? METADATA_DISTINCT_NODE : METADATA_NODE, operands);
+        }
+        stream.exitBlock();
+    }
+
+    private int metadata(Object operand) {
+        if (operand instanceof LiteralParser.NodeReference reference) {
+            return metadataOperands.size() + reference.number();
+        }
+        return metadataOperands.get(operand);
+    }
+
+    private void writeFunction(IrFunction function) throws IOException {
+        // arguments and then every instruction with a result are numbered after the module's values
+        final var values = new HashMap<String, Integer>();
+        int next = firstConstant + constants.size();
+        for (var parameter : function.getParameters()) {
+            values.put(parameter.getName(), next++);
+        }
+        final var blocks = new IdentityHashMap<BasicBlock, Integer>();
+        for (var block : function.getBlocks()) {
+            blocks.put(block, blocks.size());
+            for (var instruction : block.getInstructions()) {
+                if (resultType(instruction) != IrType.VOID) {
+                    if (instruction.getResult() != null) {
+                        values.put(instruction.getResult().getName(), next);
+                    }
+                    next++;
+                }
+            }
+        }
+
+        stream.enterBlock(FUNCTION_BLOCK, 4);
+        stream.record(FUNCTION_DECLAREBLOCKS, blocks.size());
+        final var scope = new Scope(
+                values,
+                blocks,
+                firstConstant + constants.size() + function.getParameters().size());
+        final var attachments = new ArrayList<long[]>();
+        int index = 0;
+        for (var block : function.getBlocks()) {
+            for (var instruction : block.getInstructions()) {
+                writeInstruction(instruction, scope);
+                if (instruction.getMetadata() != null) {
+                    for (var attachment : LiteralParser.attachments(instruction.getMetadata())) {
+                        attachments.add(new long[] {
+                            index, kinds.get(attachment.kind()), metadataOperands.size() + attachment.node()
+                        });
+                    }
+                }
+                if (resultType(instruction) != IrType.VOID) {
+                    scope.next++;
+                }
+                index++;
+            }
+        }
+        writeSymbols(function, scope);
+        if (!attachments.isEmpty()) {
+            stream.enterBlock(METADATA_ATTACHMENT_BLOCK, 3);
+            for (var attachment : attachments) {
+                stream.record(METADATA_ATTACHMENT, attachment);
+            }
+            stream.exitBlock();
+        }
+        stream.exitBlock();
+    }
+
+    private void writeInstruction(Instruction instruction, Scope scope) throws IOException {
+        final var type = instruction.getType();
+        final var values = instruction.getOperands();
+        operands.clear();
+        switch (instruction.getOpcode()) {
+            case ALLOCA -> stream.record(
+                    FUNCTION_ALLOCA, type(type), type(IrType.I32), constant(IrType.I32, "1"), ALLOCA_EXPLICIT_TYPE);
+            case LOAD -> {
+                valueAndType(scope, instruction, 0);
+                // the loaded type, no alignment, not volatile
+                stream.record(FUNCTION_LOAD, operands.add(type(type)).add(0).add(0));
+            }
+            case STORE -> {
+                valueAndType(scope, instruction, 1);
+                valueAndType(scope, instruction, 0);
+                stream.record(FUNCTION_STORE, operands.add(0).add(0));
+            }
+            case GETELEMENTPTR -> {
+                // 1: inbounds
+                operands.add(1).add(type(type));
+                for (int i = 0; i < values.length; i++) {
+                    valueAndType(scope, instruction, i);
+                }
+                stream.record(FUNCTION_GEP, operands);
+            }
+            case BITCAST, TRUNC, ZEXT, FPTOUI -> {
+                valueAndType(scope, instruction, 0);
+                stream.record(FUNCTION_CAST, operands.add(type(type)).add(castCode(instruction.getOpcode())));
+            }
+            case ICMP, FCMP -> {
+                valueAndType(scope, instruction, 0);
+                value(scope, instruction, 1);
+                stream.record(FUNCTION_CMP, operands.add(predicate(instruction)));
+            }
+            case SELECT -> {
+                valueAndType(scope, instruction, 1);
+                value(scope, instruction, 2);
+                valueAndType(scope, instruction, 0);
+                stream.record(FUNCTION_SELECT, operands);
+            }
+            case PHI -> {
+                operands.add(type(type));
+                for (int i = 0; i < values.length; i++) {
+                    // signed, a phi may refer to a value defined further down
+                    operands.add(signed(scope.next - id(scope, values[i], type)))
+                            .add(scope.block(instruction.getTarget(i)));
+                }
+                stream.record(FUNCTION_PHI, operands);
+            }
+            case CALL -> {
+                final var callee = calleeType(instruction);
+                operands.add(0).add(CALL_EXPLICIT_TYPE).add(type(callee));
+                operands.add(scope.relative(global(instruction.getCallee())));
+                for (int i = 0; i < values.length; i++) {
+                    // arguments past the fixed parameters carry their type
+                    if (i < callee.parameters().size()) {
+                        value(scope, instruction, i);
+                    } else {
+                        valueAndType(scope, instruction, i);
+                    }
+                }
+                stream.record(FUNCTION_CALL, operands);
+            }
+            case BR -> {
+                operands.add(scope.block(instruction.getTarget(0)));
+                if (instruction.isConditionalBranch()) {
+                    operands.add(scope.block(instruction.getTarget(1)));
+                    value(scope, instruction, 0);
+                }
+                stream.record(FUNCTION_BR, operands);
+            }
+            case RET -> {
+                if (values.length > 0) {
+                    valueAndType(scope, instruction, 0);
+                }
+                stream.record(FUNCTION_RET, operands);
+            }
+            default -> {
+                valueAndType(scope, instruction, 0);
+                value(scope, instruction, 1);
+                stream.record(FUNCTION_BINOP, operands.add(binaryCode(instruction.getOpcode())));
+            }
+        }
+    }
+
+    private int id(Scope scope, Value value, IrType type) {
+        if (value instanceof Constant constant) {
+            return constant(type, constant.getName());
+        }
+        if (value.isGlobal()) {
+            return global(value.getName().substring(1));
+        }
+        final var id = scope.values.get(value.getName());
+        if (id == null) {
+            throw new IllegalArgumentException("Use of undefined value " + value.getName());
+        }
+        return id;
+    }
+
+    // Operand i relative to the instruction, with its type when it is defined further down.
+    private void valueAndType(Scope scope, Instruction instruction, int i) {
+        final var type = operandType(instruction, i);
+        final int id = id(scope, instruction.getOperand(i), type);
+        operands.add(scope.relative(id));
+        if (id >= scope.next) {
+            operands.add(type(type));
+        }
+    }
+
+    private void value(Scope scope, Instruction instruction, int i) {
+        operands.add(scope.relative(id(scope, instruction.getOperand(i), operandType(instruction, i))));
+    }
+
+    private void writeSymbols(IrFunction function, Scope scope) throws IOException {
+        boolean empty = true;
+        for (var parameter : function.getParameters()) {
+            empty &= IrPrinter.isUnnamed(parameter);
+        }
+        for (var block : function.getBlocks()) {
+            empty &= block.getLabel() == null;
+            for (var instruction : block.getInstructions()) {
+                empty &= instruction.getResult() == null || IrPrinter.isUnnamed(instruction.getResult());
+            }
+        }
+        if (empty) {
+            return;
+        }
+
+        stream.enterBlock(VALUE_SYMTAB_BLOCK, 4);
+        for (var parameter : function.getParameters()) {
+            writeSymbol(SYMTAB_ENTRY, scope.values.get(parameter.getName()), parameter);
+        }
+        for (var block : function.getBlocks()) {
+            if (block.getLabel() != null) {
+                operands.clear().add(scope.block(block));
+                for (long c : chars(block.getLabel())) {
+                    operands.add(c);
+                }
+                stream.record(SYMTAB_BLOCK_ENTRY, operands);
+            }
+            for (var instruction : block.getInstructions()) {
+                final var result = instruction.getResult();
+                if (result != null) {
+                    writeSymbol(SYMTAB_ENTRY, scope.values.get(result.getName()), result);
+                }
+            }
+        }
+        stream.exitBlock();
+    }
+
+    private void writeSymbol(int code, int id, Value value) throws IOException {
+        if (IrPrinter.isUnnamed(value)) {
+            return;
+        }
+        operands.clear().add(id);
+        // without the % the printer puts in front
+        for (long c : chars(value.getName().substring(1))) {
+            operands.add(c);
+        }
+        stream.record(code, operands);
+    }
+
+    // Appends the name to the string table and returns its offset and length.
+    private long[] name(String name) {
+        final var bytes = name.getBytes(StandardCharsets.UTF_8);
+        final long offset = strtab.size();
+        strtab.writeBytes(bytes);
+        return new long[] {offset, bytes.length};
+    }
+
+    private static long[] chars(String text) {
+        final var bytes = text.getBytes(StandardCharsets.UTF_8);
+        final var chars = new long[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i] = bytes[i] & 0xFF;
+        }
+        return chars;
+    }
+
+    // the sign in the lowest bit, LLVM's encoding of signed operands
+    private static long signed(long value) {
+        return value >= 0 ? value << 1 : (-value << 1) | 1;
+    }
+
+    private static int castCode(Opcode opcode) {
+        return switch (opcode) {
+            case TRUNC -> 0;
+            case ZEXT -> 1;
+            case FPTOUI -> 3;
+            case BITCAST -> 11;
+            default -> throw new IllegalArgumentException("Not a cast: " + opcode);
+        };
+    }
+
+    // fadd and the other floating point operations share the integer codes
+    private static int binaryCode(Opcode opcode) {
+        return switch (opcode) {
+            case ADD, FADD -> 0;
+            case SUB, FSUB -> 1;
+            case MUL, FMUL -> 2;
+            case UDIV -> 3;
+            case SDIV, FDIV -> 4;
+            case UREM -> 5;
+            case AND -> 10;
+            case OR -> 11;
+            case XOR -> 12;
+            default -> throw new IllegalArgumentException("Not a binary operation: " + opcode);
+        };
+    }
+
+    private static int predicate(Instruction instruction) {
+        final var predicate = instruction.getPredicate();
+        if (instruction.getOpcode() == Opcode.ICMP) {
+            return switch (predicate) {
+                case "eq" -> 32;
+                case "ne" -> 33;
+                case "ugt" -> 34;
+                case "uge" -> 35;
+                case "ult" -> 36;
+                case "ule" -> 37;
+                case "sgt" -> 38;
+                case "sge" -> 39;
+                case "slt" -> 40;
+                case "sle" -> 41;
+                default -> throw new IllegalArgumentException("Unknown icmp predicate " + predicate);
+            };
+        }
+        final int code = List.of(
+                        "false", "oeq", "ogt", "oge", "olt", "ole", "one", "ord", "uno", "ueq", "ugt", "uge", "ult",
+                        "ule", "une", "true")
+                .indexOf(predicate);
+        if (code < 0) {
+            throw new IllegalArgumentException("Unknown fcmp predicate " + predicate);
+        }
+        return code;
+    }
+
+    private record ConstantText(IrType type, String text) {}
+
+    // The function being written: its value and block numbers and the number the next instruction's result gets.
+    private static final class Scope {
+        private final Map<String, Integer> values;
+        private final Map<BasicBlock, Integer> blocks;
+        private int next;
+
+        private Scope(Map<String, Integer> values, Map<BasicBlock, Integer> blocks, int next) {
+            this.values = values;
+            this.blocks = blocks;
+            this.next = next;
+        }
+
+        // what is left of the instruction's number after subtracting the value's, in 32 bits
+        private long relative(int id) {
+            return (next - id) & 0xFFFFFFFFL;
+        }
+
+        private int block(BasicBlock block) {
+            final var id = blocks.get(block);
+            if (id == null) {
+                throw new IllegalArgumentException("Branch to a block outside the function: " + block);
+            }
+            return id;
+        }
+    }
+}
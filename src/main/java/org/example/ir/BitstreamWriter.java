@@ -0,0 +1,203 @@
+package org.example.ir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * The container format of LLVM bitcode: fields of any width packed into little-endian 32-bit words, nested blocks that
+ * start with their length in words, unabbreviated records and blobs. The words go through one buffer into a file
+ * channel. A block's length is only known when the block ends; it is patched in the buffer, or with a positional write
+ * if that part of the file was flushed already.
+ */
+final class BitstreamWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // abbreviation ids every block has
+    private static final int END_BLOCK = 0;
+    private static final int ENTER_SUBBLOCK = 1;
+    private static final int DEFINE_ABBREV = 2;
+    private static final int UNABBREV_RECORD = 3;
+    private static final int FIRST_DEFINED_ABBREV = 4;
+    private static final int ENCODING_BLOB = 5;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final Deque<Block> blocks = new ArrayDeque<>();
+    // bytes of the file that have left the buffer
+    private long flushed;
+    // up to 31 bits that do not fill a word yet, lowest first
+    private long bits;
+    private int bitCount;
+    private int abbreviationWidth = 2;
+    private int nextAbbreviation = FIRST_DEFINED_ABBREV;
+
+    BitstreamWriter(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    // 'BC' 0xC0DE
+    void magic() throws IOException {
+        emit('B', 8);
+        emit('C', 8);
+        emit(0x0, 4);
+        emit(0xC, 4);
+        emit(0xE, 4);
+        emit(0xD, 4);
+    }
+
+    void enterBlock(int id, int width) throws IOException {
+        emit(ENTER_SUBBLOCK, abbreviationWidth);
+        emitVbr(id, 8);
+        emitVbr(width, 4);
+        alignToWord();
+        final long lengthAt = position();
+        putInt(0);
+        blocks.push(new Block(abbreviationWidth, nextAbbreviation, lengthAt));
+        abbreviationWidth = width;
+        nextAbbreviation = FIRST_DEFINED_ABBREV;
+    }
+
+    void exitBlock() throws IOException {
+        emit(END_BLOCK, abbreviationWidth);
+        alignToWord();
+        final var block = blocks.pop();
+        patch(block.lengthAt(), (int) ((position() - block.lengthAt() - Integer.BYTES) / Integer.BYTES));
+        abbreviationWidth = block.abbreviationWidth();
+        nextAbbreviation = block.nextAbbreviation();
+    }
+
+    void record(int code, long... operands) throws IOException {
+        record(code, operands, operands.length);
+    }
+
+    void record(int code, Operands operands) throws IOException {
+        record(code, operands.values, operands.size);
+    }
+
+    private void record(int code, long[] operands, int length) throws IOException {
+        emit(UNABBREV_RECORD, abbreviationWidth);
+        emitVbr(code, 6);
+        emitVbr(length, 6);
+        for (int i = 0; i < length; i++) {
+            emitVbr(operands[i], 6);
+        }
+    }
+
+    // Defines [code, blob] in the current block and returns its abbreviation id; only used for the string table.
+    int defineBlobAbbreviation(int code) throws IOException {
+        emit(DEFINE_ABBREV, abbreviationWidth);
+        emitVbr(2, 5);
+        // a literal operand: the record code
+        emit(1, 1);
+        emitVbr(code, 8);
+        emit(0, 1);
+        emit(ENCODING_BLOB, 3);
+        return nextAbbreviation++;
+    }
+
+    void blob(int abbreviation, byte[] bytes) throws IOException {
+        emit(abbreviation, abbreviationWidth);
+        emitVbr(bytes.length, 6);
+        alignToWord();
+        // the bytes go around the bit accumulator, which is empty on a word boundary
+        final var padded = Arrays.copyOf(bytes, (bytes.length + Integer.BYTES - 1) & -Integer.BYTES);
+        for (int offset = 0; offset < padded.length; ) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            final int length = Math.min(buffer.remaining(), padded.length - offset);
+            buffer.put(padded, offset, length);
+            offset += length;
+        }
+    }
+
+    // Writes out what is still buffered; everything written so far is then in the file.
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            flushed += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void emit(long value, int width) throws IOException {
+        bits |= value << bitCount;
+        bitCount += width;
+        if (bitCount >= Integer.SIZE) {
+            putInt((int) bits);
+            bits >>>= Integer.SIZE;
+            bitCount -= Integer.SIZE;
+        }
+    }
+
+    // width - 1 bits of the value at a time, the top bit set while more chunks follow
+    private void emitVbr(long value, int width) throws IOException {
+        final long more = 1L << (width - 1);
+        while (Long.compareUnsigned(value, more) >= 0) {
+            emit((value & (more - 1)) | more, width);
+            value >>>= width - 1;
+        }
+        emit(value, width);
+    }
+
+    private void alignToWord() throws IOException {
+        if (bitCount > 0) {
+            emit(0, Integer.SIZE - bitCount);
+        }
+    }
+
+    private void putInt(int word) throws IOException {
+        if (buffer.remaining() < Integer.BYTES) {
+            flush();
+        }
+        buffer.putInt(word);
+    }
+
+    // only valid on a word boundary
+    private long position() {
+        return flushed + buffer.position();
+    }
+
+    private void patch(long position, int word) throws IOException {
+        if (position >= flushed) {
+            buffer.putInt((int) (position - flushed), word);
+            return;
+        }
+        final var patch = ByteBuffer.allocate(Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(word);
+        patch.flip();
+        while (patch.hasRemaining()) {
+            channel.write(patch, position + patch.position());
+        }
+    }
+
+    private record Block(int abbreviationWidth, int nextAbbreviation, long lengthAt) {}
+
+    // The operands of one record, reused from record to record so building one does not allocate.
+    static final class Operands {
+        private long[] values = new long[16];
+        private int size;
+
+        Operands clear() {
+            size = 0;
+            return this;
+        }
+
+        Operands add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+            return this;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.example.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Control-flow facts for one function: predecessors, reachability, reverse postorder, immediate dominators
+ * (Cooper-Harvey-Kennedy) and dominance frontiers. Computed once on construction; rebuild it after changing the CFG.
+ */
+public class ControlFlow {
+    private final IrFunction function;
+    private final Map<BasicBlock, List<BasicBlock>> predecessors = new HashMap<>();
+    private final List<BasicBlock> reversePostorder = new ArrayList<>();
+    private final Map<BasicBlock, Integer> order = new HashMap<>();
+    private final Map<BasicBlock, BasicBlock> immediateDominators = new HashMap<>();
+    private final Map<BasicBlock, List<BasicBlock>> dominatorTree = new HashMap<>();
+    private Map<BasicBlock, Set<BasicBlock>> frontiers;
+
+    public ControlFlow(IrFunction function) {
+        this.function = function;
+        for (BasicBlock block : function.getBlocks()) {
+            predecessors.computeIfAbsent(block, b -> new ArrayList<>());
+            for (BasicBlock successor : new LinkedHashSet<>(block.successors())) {
+                predecessors.computeIfAbsent(successor, b -> new ArrayList<>()).add(block);
+            }
+        }
+        computeReversePostorder();
+        computeDominators();
+    }
+
+    public List<BasicBlock> predecessors(BasicBlock block) {
+        return predecessors.getOrDefault(block, List.of());
+    }
+
+    public boolean isReachable(BasicBlock block) {
+        return order.containsKey(block);
+    }
+
+    public List<BasicBlock> reversePostorder() {
+        return reversePostorder;
+    }
+
+    public BasicBlock immediateDominator(BasicBlock block) {
+        return immediateDominators.get(block);
+    }
+
+    public List<BasicBlock> dominatorTreeChildren(BasicBlock block) {
+        return dominatorTree.getOrDefault(block, List.of());
+    }
+
+    public Set<BasicBlock> dominanceFrontier(BasicBlock block) {
+        if (frontiers == null) {
+            computeFrontiers();
+        }
+        return frontiers.getOrDefault(block, Set.of());
+    }
+
+    private void computeReversePostorder() {
+        final var postorder = new ArrayList<BasicBlock>();
+        final var visited = new HashSet<BasicBlock>();
+        // iterative DFS, deep if/loop nesting must not overflow the Java stack
+        final var stack = new ArrayList<BasicBlock>();
+        final var nextSuccessor = new ArrayList<Integer>();
+        stack.add(function.entry());
+        nextSuccessor.add(0);
+        visited.add(function.entry());
+        while (!stack.isEmpty()) {
+            final var top = stack.size() - 1;
+            final var block = stack.get(top);
+            final var successors = block.successors();
+            final int index = nextSuccessor.get(top);
+            if (index < successors.size()) {
+                nextSuccessor.set(top, index + 1);
+                final var successor = successors.get(index);
+                if (visited.add(successor)) {
+                    stack.add(successor);
+                    nextSuccessor.add(0);
+                }
+            } else {
+                postorder.add(block);
+                stack.removeLast();
+                nextSuccessor.removeLast();
+            }
+        }
+
+        for (int i = postorder.size() - 1; i >= 0; i--) {
+            order.put(postorder.get(i), reversePostorder.size());
+            reversePostorder.add(postorder.get(i));
+        }
+    }
+
+    private void computeDominators() {
+        final var entry = function.entry();
+        immediateDominators.put(entry, entry);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : reversePostorder) {
+                if (block == entry) {
+                    continue;
+                }
+                BasicBlock dominator = null;
+                for (BasicBlock predecessor : predecessors(block)) {
+                    if (!immediateDominators.containsKey(predecessor)) {
+                        continue;
+                    }
+                    dominator = dominator == null ? predecessor : intersect(predecessor, dominator);
+                }
+                if (dominator != null && immediateDominators.get(block) != dominator) {
+                    immediateDominators.put(block, dominator);
+                    changed = true;
+                }
+            }
+        }
+
+        for (BasicBlock block : reversePostorder) {
+            if (block != entry) {
+                dominatorTree
+                        .computeIfAbsent(immediateDominators.get(block), b -> new ArrayList<>())
+                        .add(block);
+            }
+        }
+    }
+
+    private BasicBlock intersect(BasicBlock first, BasicBlock second) {
+        while (first != second) {
+            while (order.get(first) > order.get(second)) {
+                first = immediateDominators.get(first);
+            }
+            while (order.get(second) > order.get(first)) {
+                second = immediateDominators.get(second);
+            }
+        }
+        return first;
+    }
+
+    private void computeFrontiers() {
+        frontiers = new HashMap<>();
+        for (BasicBlock block : reversePostorder) {
+            final var reachablePredecessors =
+                    predecessors(block).stream().filter(this::isReachable).toList();
+            if (reachablePredecessors.size() < 2) {
+                continue;
+            }
+            for (BasicBlock predecessor : reachablePredecessors) {
+                BasicBlock runner = predecessor;
+                while (runner != immediateDominators.get(block)) {
+                    frontiers
+                            .computeIfAbsent(runner, b -> new LinkedHashSet<>())
+                            .add(block);
+                    runner = immediateDominators.get(runner);
+                }
+            }
+        }
+    }
+}
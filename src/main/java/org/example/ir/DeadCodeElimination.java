@@ -0,0 +1,422 @@
+package org.example.ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+import org.example.type.Constant;
+import org.example.type.Value;
+
+/**
+ * Removes what can never run or is never used before the module is printed. Code after a block's terminator goes,
+ * branches on a constant become jumps, blocks no branch reaches any more go with their phi entries, and a block that is
+ * the only successor of its only predecessor is merged into it. Instructions without side effects whose result nobody
+ * uses go, and so do allocas and globals that are only ever stored to, with their stores. Functions main never calls,
+ * declarations nothing calls and globals nothing references (the fixed printf/scanf formats included) are left out of
+ * the module.
+ */
+public class DeadCodeElimination {
+    private static final Pattern GLOBAL_REFERENCE = Pattern.compile("@([\\w.$]+)");
+    private static final String MAIN = "main";
+
+    public void run(IrModule module) {
+        module.getFunctions().forEach(this::simplifyControlFlow);
+        removeUncalledFunctions(module);
+        removeDeadInstructions(module);
+        removeUnreferenced(module);
+    }
+
+    private void simplifyControlFlow(IrFunction function) {
+        removeCodeAfterTerminators(function);
+        foldConstantBranches(function);
+        removeUnreachableBlocks(function);
+        mergeBlocks(function);
+    }
+
+    // e.g. statements after a return in a function body
+    private static void removeCodeAfterTerminators(IrFunction function) {
+        for (BasicBlock block : function.getBlocks()) {
+            final var instructions = block.getInstructions();
+            for (int i = 0; i < instructions.size() - 1; i++) {
+                if (instructions.get(i).getOpcode().isTerminator()) {
+                    instructions.subList(i + 1, instructions.size()).clear();
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void foldConstantBranches(IrFunction function) {
+        for (BasicBlock block : function.getBlocks()) {
+            final var terminator = block.terminator();
+            if (terminator == null || !terminator.isConditionalBranch()) {
+                continue;
+            }
+
+            final BasicBlock target;
+            if (terminator.getTarget(0) == terminator.getTarget(1)) {
+                target = terminator.getTarget(0);
+            } else if (terminator.getOperand(0) instanceof Constant condition) {
+                target = isTrue(condition) ? terminator.getTarget(0) : terminator.getTarget(1);
+            } else {
+                continue;
+            }
+            final var instructions = block.getInstructions();
+            instructions.set(
+                    instructions.size() - 1, Instruction.branch(target).withMetadata(terminator.getMetadata()));
+        }
+    }
+
+    private static boolean isTrue(Constant condition) {
+        return condition.getName().equals("true") || condition.getName().equals("1");
+    }
+
+    // Phis keep one entry per remaining predecessor; one left means the phi is just that value.
+    private static void removeUnreachableBlocks(IrFunction function) {
+        final var controlFlow = new ControlFlow(function);
+        function.removeBlocks(block -> !controlFlow.isReachable(block));
+
+        final var replacements = new HashMap<String, Value>();
+        for (BasicBlock block : function.getBlocks()) {
+            final var predecessors = new HashSet<>(controlFlow.predecessors(block));
+            final var iterator = block.getInstructions().listIterator();
+            while (iterator.hasNext()) {
+                final var phi = iterator.next();
+                if (phi.getOpcode() != Opcode.PHI) {
+                    continue;
+                }
+
+                final var values = new ArrayList<Value>();
+                final var blocks = new ArrayList<BasicBlock>();
+                for (int i = 0; i < phi.getTargets().length; i++) {
+                    final var incoming = phi.getTarget(i);
+                    if (predecessors.contains(incoming) && controlFlow.isReachable(incoming)) {
+                        values.add(phi.getOperand(i));
+                        blocks.add(incoming);
+                    }
+                }
+                if (values.size() == 1) {
+                    replacements.put(phi.getResult().getName(), values.getFirst());
+                    iterator.remove();
+                } else if (values.size() < phi.getTargets().length) {
+                    iterator.set(Instruction.phi(
+                            phi.getResult(),
+                            phi.getType(),
+                            values.toArray(Value[]::new),
+                            blocks.toArray(BasicBlock[]::new)));
+                }
+            }
+        }
+        substitute(function, replacements);
+    }
+
+    private static void substitute(IrFunction function, Map<String, Value> replacements) {
+        if (replacements.isEmpty()) {
+            return;
+        }
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction instruction : block.getInstructions()) {
+                final var operands = instruction.getOperands();
+                for (int i = 0; i < operands.length; i++) {
+                    while (!(operands[i] instanceof Constant) && replacements.containsKey(operands[i].getName())) {
+                        operands[i] = replacements.get(operands[i].getName());
+                    }
+                }
+            }
+        }
+    }
+
+    // Straight-line chains such as if_start_N after a known condition become one block.
+    private static void mergeBlocks(IrFunction function) {
+        final var controlFlow = new ControlFlow(function);
+        final var mergedInto = new IdentityHashMap<BasicBlock, BasicBlock>();
+        for (BasicBlock block : function.getBlocks()) {
+            if (mergedInto.containsKey(block)) {
+                continue;
+            }
+            while (true) {
+                final var terminator = block.terminator();
+                if (terminator == null
+                        || terminator.getOpcode() != Opcode.BR
+                        || terminator.isConditionalBranch()
+                        || terminator.getMetadata() != null) {
+                    break;
+                }
+                // an empty next block is merged as well, e.g. the end of a folded if in a function without a return
+                final var next = terminator.getTarget(0);
+                if (next == block
+                        || next == function.entry()
+                        || controlFlow.predecessors(next).size() != 1
+                        || startsWithPhi(next)) {
+                    break;
+                }
+
+                final var instructions = block.getInstructions();
+                instructions.removeLast();
+                instructions.addAll(next.getInstructions());
+                mergedInto.put(next, block);
+            }
+        }
+        if (mergedInto.isEmpty()) {
+            return;
+        }
+
+        function.removeBlocks(mergedInto::containsKey);
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction instruction : block.getInstructions()) {
+                if (instruction.getOpcode() != Opcode.PHI) {
+                    continue;
+                }
+                for (int i = 0; i < instruction.getTargets().length; i++) {
+                    var incoming = instruction.getTarget(i);
+                    while (mergedInto.containsKey(incoming)) {
+                        incoming = mergedInto.get(incoming);
+                    }
+                    instruction.setTarget(i, incoming);
+                }
+            }
+        }
+    }
+
+    private static boolean startsWithPhi(BasicBlock block) {
+        return !block.getInstructions().isEmpty()
+                && block.getInstructions().getFirst().getOpcode() == Opcode.PHI;
+    }
+
+    private static void removeUncalledFunctions(IrModule module) {
+        final var byName = new HashMap<String, IrFunction>();
+        module.getFunctions().forEach(function -> byName.put(function.getName(), function));
+        if (!byName.containsKey(MAIN)) {
+            return;
+        }
+
+        final var called = new HashSet<String>();
+        final Deque<IrFunction> worklist = new ArrayDeque<>();
+        called.add(MAIN);
+        worklist.add(byName.get(MAIN));
+        while (!worklist.isEmpty()) {
+            for (BasicBlock block : worklist.poll().getBlocks()) {
+                for (Instruction instruction : block.getInstructions()) {
+                    final var callee = byName.get(instruction.getCallee());
+                    if (instruction.getOpcode() == Opcode.CALL && callee != null && called.add(callee.getName())) {
+                        worklist.add(callee);
+                    }
+                }
+            }
+        }
+        module.getFunctions().removeIf(function -> !called.contains(function.getName()));
+    }
+
+    // Use counts over the whole module, so a global only stored to in main and never loaded anywhere goes as well.
+    private static void removeDeadInstructions(IrModule module) {
+        final var uses = new Uses(module);
+        final Deque<Instruction> worklist = new ArrayDeque<>();
+        uses.forEachDefinition((use, definition) -> {
+            if (use.count == 0 && definition != null && isRemovable(definition)) {
+                worklist.add(definition);
+            } else if (use.isStoredOnly()) {
+                worklist.addAll(use.stores);
+                if (definition != null) {
+                    worklist.add(definition);
+                }
+            }
+        });
+
+        final Set<Instruction> dead = Collections.newSetFromMap(new IdentityHashMap<>());
+        while (!worklist.isEmpty()) {
+            final var instruction = worklist.poll();
+            if (!dead.add(instruction)) {
+                continue;
+            }
+
+            final var operands = instruction.getOperands();
+            for (int i = 0; i < operands.length; i++) {
+                final var use = uses.of(instruction, operands[i]);
+                if (use == null) {
+                    continue;
+                }
+                use.count--;
+                if (instruction.getOpcode() == Opcode.STORE && i == 1) {
+                    use.storeCount--;
+                    continue;
+                }
+                if (use.count == 0 && use.definition != null && isRemovable(use.definition)) {
+                    worklist.add(use.definition);
+                } else if (use.isStoredOnly()) {
+                    worklist.addAll(use.stores);
+                    if (use.definition != null) {
+                        worklist.add(use.definition);
+                    }
+                }
+            }
+        }
+
+        if (dead.isEmpty()) {
+            return;
+        }
+        for (IrFunction function : module.getFunctions()) {
+            for (BasicBlock block : function.getBlocks()) {
+                block.getInstructions().removeIf(dead::contains);
+            }
+        }
+    }
+
+    private static boolean isRemovable(Instruction instruction) {
+        return instruction.getResult() != null && !instruction.hasSideEffects();
+    }
+
+    // Declarations and globals that no remaining instruction, constant or initializer mentions.
+    private static void removeUnreferenced(IrModule module) {
+        final var referenced = new HashSet<String>();
+        for (IrFunction function : module.getFunctions()) {
+            referenced.add(function.getName());
+            for (BasicBlock block : function.getBlocks()) {
+                for (Instruction instruction : block.getInstructions()) {
+                    if (instruction.getCallee() != null) {
+                        referenced.add(instruction.getCallee());
+                    }
+                    for (Value operand : instruction.getOperands()) {
+                        addReferences(operand, referenced);
+                    }
+                }
+            }
+        }
+        for (Global global : module.getGlobals().values()) {
+            addReferences(global.initializer(), referenced);
+        }
+
+        module.getDeclarations().keySet().retainAll(referenced);
+        module.getGlobals().keySet().retainAll(referenced);
+    }
+
+    private static void addReferences(Value value, Set<String> referenced) {
+        if (value instanceof Constant) {
+            addReferences(value.getName(), referenced);
+        } else if (value.isGlobal()) {
+            referenced.add(value.getName().substring(1));
+        }
+    }
+
+    private static void addReferences(String text, Set<String> referenced) {
+        if (text.indexOf('@') < 0) {
+            return;
+        }
+        final var matcher = GLOBAL_REFERENCE.matcher(text);
+        while (matcher.find()) {
+            referenced.add(matcher.group(1));
+        }
+    }
+
+    // How often a local of one function or a global is an operand, and how many of those are store addresses.
+    private static final class Uses {
+        private final Map<String, Use> globals = new HashMap<>();
+        private final Map<IrFunction, Map<String, Use>> locals = new IdentityHashMap<>();
+        private final Map<Instruction, IrFunction> owners = new IdentityHashMap<>();
+
+        Uses(IrModule module) {
+            for (Global global : module.getGlobals().values()) {
+                globals.put("@" + global.name(), new Use(null));
+            }
+            for (IrFunction function : module.getFunctions()) {
+                final var functionLocals = new HashMap<String, Use>();
+                locals.put(function, functionLocals);
+                for (BasicBlock block : function.getBlocks()) {
+                    for (Instruction instruction : block.getInstructions()) {
+                        owners.put(instruction, function);
+                        if (instruction.getResult() != null) {
+                            functionLocals.put(instruction.getResult().getName(), new Use(instruction));
+                        }
+                    }
+                }
+            }
+
+            for (IrFunction function : module.getFunctions()) {
+                for (BasicBlock block : function.getBlocks()) {
+                    for (Instruction instruction : block.getInstructions()) {
+                        final var operands = instruction.getOperands();
+                        for (int i = 0; i < operands.length; i++) {
+                            final var use = of(instruction, operands[i]);
+                            if (use == null) {
+                                continue;
+                            }
+                            use.count++;
+                            if (instruction.getOpcode() == Opcode.STORE && i == 1) {
+                                use.storeCount++;
+                                use.stores.add(instruction);
+                            }
+                        }
+                        markReferenced(instruction);
+                    }
+                }
+            }
+            for (Global global : module.getGlobals().values()) {
+                markReferenced(global.initializer());
+            }
+        }
+
+        void forEachDefinition(BiConsumer<Use, Instruction> action) {
+            globals.values().forEach(use -> action.accept(use, null));
+            locals.values()
+                    .forEach(functionLocals ->
+                            functionLocals.values().forEach(use -> action.accept(use, use.definition)));
+        }
+
+        Use of(Instruction instruction, Value operand) {
+            if (operand instanceof Constant) {
+                return null;
+            }
+            if (operand.isGlobal()) {
+                return globals.get(operand.getName());
+            }
+            return locals.get(owners.get(instruction)).get(operand.getName());
+        }
+
+        // a global inside a constant expression (a string pointer, a bitcast) is an address taken, it stays
+        private void markReferenced(Instruction instruction) {
+            for (Value operand : instruction.getOperands()) {
+                if (operand instanceof Constant constant) {
+                    markReferenced(constant.getName());
+                }
+            }
+        }
+
+        private void markReferenced(String text) {
+            if (text.indexOf('@') < 0) {
+                return;
+            }
+            final var matcher = GLOBAL_REFERENCE.matcher(text);
+            while (matcher.find()) {
+                final var use = globals.get("@" + matcher.group(1));
+                if (use != null) {
+                    use.count++;
+                }
+            }
+        }
+    }
+
+    private static final class Use {
+        private final Instruction definition;
+        private final List<Instruction> stores = new ArrayList<>();
+        private int count;
+        private int storeCount;
+
+        Use(Instruction definition) {
+            this.definition = definition;
+        }
+
+        // memory nothing reads: an alloca or a global with only stores left
+        boolean isStoredOnly() {
+            return storeCount > 0
+                    && count == storeCount
+                    && (definition == null || definition.getOpcode() == Opcode.ALLOCA);
+        }
+    }
+}
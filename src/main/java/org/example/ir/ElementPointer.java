@@ -0,0 +1,23 @@
+package org.example.ir;
+
+import lombok.Getter;
+import org.example.type.Constant;
+import org.example.type.Type;
+
+/**
+ * Constant {@code getelementptr} to the first character of a global {@code [N x i8]} array, used wherever a string
+ * global is passed as {@code i8*}.
+ */
+@Getter
+public class ElementPointer extends Constant {
+    private final String global;
+    private final IrType arrayType;
+
+    public ElementPointer(String global, IrType arrayType) {
+        super(
+                "getelementptr inbounds (" + arrayType + ", " + arrayType.pointer() + " @" + global + ", i32 0, i32 0)",
+                Type.STRING);
+        this.global = global;
+        this.arrayType = arrayType;
+    }
+}
@@ -0,0 +1,8 @@
+package org.example.ir;
+
+// @name = [private unnamed_addr] global|constant type initializer
+public record Global(String name, boolean constant, IrType type, String initializer, boolean isPrivate) {
+    public Global(String name, boolean constant, IrType type, String initializer) {
+        this(name, constant, type, initializer, false);
+    }
+}
@@ -0,0 +1,170 @@
+package org.example.ir;
+
+import java.util.Arrays;
+import lombok.Getter;
+import org.example.type.Value;
+
+/**
+ * A single IR instruction: an opcode, an optional result, the instruction type and a fixed operand array. Branches and
+ * phis keep their successor or incoming blocks in {@code targets}, calls keep per-argument types in
+ * {@code operandTypes}. A branch may carry a metadata attachment such as {@code !llvm.loop !3}.
+ */
+@Getter
+public final class Instruction {
+    private final Opcode opcode;
+    private final Value result;
+    private final IrType type;
+    private final Value[] operands;
+    private final IrType[] operandTypes;
+    private final BasicBlock[] targets;
+    private final String predicate;
+    private final String callee;
+    private final IrType.FunctionOf signature;
+    private String metadata;
+
+    private Instruction(
+            Opcode opcode,
+            Value result,
+            IrType type,
+            Value[] operands,
+            IrType[] operandTypes,
+            BasicBlock[] targets,
+            String predicate,
+            String callee,
+            IrType.FunctionOf signature) {
+        this.opcode = opcode;
+        this.result = result;
+        this.type = type;
+        this.operands = operands;
+        this.operandTypes = operandTypes;
+        this.targets = targets;
+        this.predicate = predicate;
+        this.callee = callee;
+        this.signature = signature;
+    }
+
+    private Instruction(Opcode opcode, Value result, IrType type, Value... operands) {
+        this(opcode, result, type, operands, null, null, null, null, null);
+    }
+
+    public static Instruction alloca(Value result, IrType type) {
+        return new Instruction(Opcode.ALLOCA, result, type);
+    }
+
+    public static Instruction load(Value result, IrType type, Value pointer) {
+        return new Instruction(Opcode.LOAD, result, type, pointer);
+    }
+
+    public static Instruction store(IrType type, Value value, Value pointer) {
+        return new Instruction(Opcode.STORE, null, type, value, pointer);
+    }
+
+    // getelementptr inbounds type, type* base, indexType index...
+    public static Instruction elementPointer(
+            Value result, IrType type, Value base, IrType indexType, Value... indices) {
+        final var operands = new Value[indices.length + 1];
+        final var operandTypes = new IrType[indices.length + 1];
+        operands[0] = base;
+        operandTypes[0] = type.pointer();
+        for (int i = 0; i < indices.length; i++) {
+            operands[i + 1] = indices[i];
+            operandTypes[i + 1] = indexType;
+        }
+        return new Instruction(Opcode.GETELEMENTPTR, result, type, operands, operandTypes, null, null, null, null);
+    }
+
+    public static Instruction bitcast(Value result, IrType from, Value value, IrType to) {
+        return cast(Opcode.BITCAST, result, from, value, to);
+    }
+
+    // bitcast, trunc, zext or fptoui value from one type to another
+    public static Instruction cast(Opcode opcode, Value result, IrType from, Value value, IrType to) {
+        return new Instruction(opcode, result, to, new Value[] {value}, new IrType[] {from}, null, null, null, null);
+    }
+
+    public static Instruction binary(Opcode opcode, Value result, IrType type, Value left, Value right) {
+        return new Instruction(opcode, result, type, left, right);
+    }
+
+    public static Instruction compare(
+            Opcode opcode, String predicate, Value result, IrType type, Value left, Value right) {
+        return new Instruction(opcode, result, type, new Value[] {left, right}, null, null, predicate, null, null);
+    }
+
+    public static Instruction select(Value result, IrType type, Value condition, Value ifTrue, Value ifFalse) {
+        return new Instruction(Opcode.SELECT, result, type, condition, ifTrue, ifFalse);
+    }
+
+    public static Instruction phi(Value result, IrType type, Value[] values, BasicBlock[] blocks) {
+        return new Instruction(Opcode.PHI, result, type, values, null, blocks, null, null, null);
+    }
+
+    // signature is only needed for variadic callees, where LLVM wants the full function type
+    public static Instruction call(
+            Value result,
+            IrType returnType,
+            IrType.FunctionOf signature,
+            String callee,
+            IrType[] argumentTypes,
+            Value[] arguments) {
+        return new Instruction(
+                Opcode.CALL, result, returnType, arguments, argumentTypes, null, null, callee, signature);
+    }
+
+    public static Instruction branch(BasicBlock target) {
+        return new Instruction(Opcode.BR, null, null, new Value[0], null, new BasicBlock[] {target}, null, null, null);
+    }
+
+    public static Instruction branch(Value condition, BasicBlock ifTrue, BasicBlock ifFalse) {
+        return new Instruction(
+                Opcode.BR,
+                null,
+                IrType.I1,
+                new Value[] {condition},
+                null,
+                new BasicBlock[] {ifTrue, ifFalse},
+                null,
+                null,
+                null);
+    }
+
+    public static Instruction ret(IrType type, Value value) {
+        return value == null
+                ? new Instruction(Opcode.RET, null, IrType.VOID)
+                : new Instruction(Opcode.RET, null, type, value);
+    }
+
+    public Instruction withMetadata(String metadata) {
+        this.metadata = metadata;
+        return this;
+    }
+
+    public Value getOperand(int index) {
+        return operands[index];
+    }
+
+    public void setOperand(int index, Value value) {
+        operands[index] = value;
+    }
+
+    public BasicBlock getTarget(int index) {
+        return targets[index];
+    }
+
+    public void setTarget(int index, BasicBlock block) {
+        targets[index] = block;
+    }
+
+    public boolean isConditionalBranch() {
+        return opcode == Opcode.BR && operands.length == 1;
+    }
+
+    public boolean hasSideEffects() {
+        return opcode == Opcode.STORE || opcode == Opcode.CALL || opcode.isTerminator();
+    }
+
+    @Override
+    public String toString() {
+        return opcode.getMnemonic() + " " + Arrays.toString(operands);
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import lombok.Getter;
+import org.example.type.Value;
+
+@Getter
+public class IrFunction {
+    private final String name;
+    private final IrType returnType;
+    private final List<Value> parameters;
+    private final String attributes;
+    private final List<BasicBlock> blocks = new ArrayList<>();
+    private final Map<String, BasicBlock> blocksByLabel = new HashMap<>();
+    private BasicBlock insertionBlock;
+
+    public IrFunction(String name, IrType returnType, List<Value> parameters, String attributes) {
+        this.name = name;
+        this.returnType = returnType;
+        this.parameters = parameters;
+        this.attributes = attributes;
+        startBlock(new BasicBlock(null));
+    }
+
+    public BasicBlock entry() {
+        return blocks.getFirst();
+    }
+
+    // Returns the block with this label, creating it detached when it is referenced before being started.
+    public BasicBlock block(String label) {
+        return blocksByLabel.computeIfAbsent(label, BasicBlock::new);
+    }
+
+    public BasicBlock startBlock(String label) {
+        return startBlock(block(label));
+    }
+
+    public BasicBlock startBlock(BasicBlock block) {
+        blocks.add(block);
+        insertionBlock = block;
+        return block;
+    }
+
+    // Drops blocks for good, e.g. ones no branch reaches any more.
+    public void removeBlocks(Predicate<BasicBlock> filter) {
+        blocks.removeIf(filter);
+        blocksByLabel.values().removeIf(filter);
+    }
+
+    public void append(Instruction instruction) {
+        insertionBlock.add(instruction);
+    }
+
+    public Mark mark() {
+        return new Mark(blocks.size(), insertionBlock.getInstructions().size());
+    }
+
+    // Drops the blocks and instructions appended after mark was taken and resumes inserting where it was.
+    public void truncate(Mark mark) {
+        final var removed = blocks.subList(mark.blocks(), blocks.size());
+        removed.forEach(block -> blocksByLabel.remove(block.getLabel()));
+        removed.clear();
+        insertionBlock = blocks.getLast();
+        final var instructions = insertionBlock.getInstructions();
+        instructions.subList(mark.instructions(), instructions.size()).clear();
+    }
+
+    public record Mark(int blocks, int instructions) {}
+}
@@ -0,0 +1,71 @@
+package org.example.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+@Getter
+public class IrModule {
+    private final Map<String, IrType.FunctionOf> declarations = new LinkedHashMap<>();
+    private final Map<String, Global> globals = new LinkedHashMap<>();
+    private final List<IrFunction> functions = new ArrayList<>();
+    // metadata node i is printed as !i
+    private final List<String> metadata = new ArrayList<>();
+    // numbers of the nodes added through uniqueMetadata, by their text
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Integer> uniqueMetadata = new HashMap<>();
+
+    public void declare(String name, IrType.FunctionOf type) {
+        declarations.putIfAbsent(name, type);
+    }
+
+    public void addGlobal(Global global) {
+        globals.put(global.name(), global);
+    }
+
+    public void addFunction(IrFunction function) {
+        functions.add(function);
+    }
+
+    // Adds a node and returns its number, which the node itself may reference when it is distinct.
+    public int addMetadata(IntFunction<String> node) {
+        final int number = metadata.size();
+        metadata.add(node.apply(number));
+        return number;
+    }
+
+    // Returns the number of an equal node added before through this method, or adds it.
+    public int uniqueMetadata(String node) {
+        return uniqueMetadata.computeIfAbsent(node, text -> addMetadata(number -> text));
+    }
+
+    public Mark mark() {
+        return new Mark(declarations.size(), globals.size(), functions.size(), metadata.size());
+    }
+
+    // Drops everything added after mark was taken.
+    public void truncate(Mark mark) {
+        truncate(declarations, mark.declarations());
+        truncate(globals, mark.globals());
+        functions.subList(mark.functions(), functions.size()).clear();
+        metadata.subList(mark.metadata(), metadata.size()).clear();
+        uniqueMetadata.values().removeIf(number -> number >= mark.metadata());
+    }
+
+    private static void truncate(Map<String, ?> map, int size) {
+        final var iterator = map.keySet().iterator();
+        for (int i = 0; iterator.hasNext(); i++) {
+            iterator.next();
+            if (i >= size) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public record Mark(int declarations, int globals, int functions, int metadata) {}
+}
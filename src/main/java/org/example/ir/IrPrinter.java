@@ -0,0 +1,224 @@
+package org.example.ir;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import org.example.type.Constant;
+import org.example.type.Value;
+
+/**
+ * Serializes an {@link IrModule} to textual LLVM IR. Unnamed (numeric) values are renumbered per function in
+ * definition order, because LLVM requires them to be sequential and the generator numbers them module-wide.
+ */
+public class IrPrinter {
+    private final Writer writer;
+    private final Map<String, String> numbering = new HashMap<>();
+
+    public IrPrinter(Writer writer) {
+        this.writer = writer;
+    }
+
+    public void print(IrModule module) throws IOException {
+        for (var declaration : module.getDeclarations().entrySet()) {
+            final var type = declaration.getValue();
+            line("declare " + type.returnType() + " @" + declaration.getKey() + "(" + type.parameterList() + ")");
+        }
+        for (Global global : module.getGlobals().values()) {
+            line("@" + global.name() + " = " + (global.isPrivate() ? "private unnamed_addr " : "")
+                    + (global.constant() ? "constant " : "global ") + global.type() + " " + global.initializer());
+        }
+        for (IrFunction function : module.getFunctions()) {
+            print(function);
+        }
+        for (int i = 0; i < module.getMetadata().size(); i++) {
+            line("!" + i + " = " + module.getMetadata().get(i));
+        }
+    }
+
+    public void print(IrFunction function) throws IOException {
+        number(function);
+
+        final var header = new StringBuilder();
+        header.append("define ")
+                .append(function.getReturnType())
+                .append(" @")
+                .append(function.getName())
+                .append("(");
+        for (int i = 0; i < function.getParameters().size(); i++) {
+            final var parameter = function.getParameters().get(i);
+            if (i > 0) {
+                header.append(", ");
+            }
+            header.append(IrType.of(parameter.getType())).append(" ").append(parameter.getName());
+        }
+        header.append(")");
+        if (function.getAttributes() != null) {
+            header.append(" ").append(function.getAttributes());
+        }
+        line(header.append(" {").toString());
+
+        for (BasicBlock block : function.getBlocks()) {
+            if (block.getLabel() != null) {
+                line(block.getLabel() + ":");
+            }
+            for (Instruction instruction : block.getInstructions()) {
+                line(format(instruction));
+            }
+        }
+        line("}");
+    }
+
+    public String format(Instruction instruction) {
+        final var text = new StringBuilder();
+        if (instruction.getResult() != null) {
+            text.append(ref(instruction.getResult())).append(" = ");
+        }
+        text.append(instruction.getOpcode().getMnemonic()).append(" ");
+
+        final var type = instruction.getType();
+        final var operands = instruction.getOperands();
+        switch (instruction.getOpcode()) {
+            case ALLOCA -> text.append(type);
+            case LOAD -> text.append(type)
+                    .append(", ")
+                    .append(type.pointer())
+                    .append(" ")
+                    .append(ref(operands[0]));
+            case STORE -> text.append(type)
+                    .append(" ")
+                    .append(ref(operands[0]))
+                    .append(", ")
+                    .append(type.pointer())
+                    .append(" ")
+                    .append(ref(operands[1]));
+            case GETELEMENTPTR -> {
+                text.append(type);
+                for (int i = 0; i < operands.length; i++) {
+                    text.append(", ")
+                            .append(instruction.getOperandTypes()[i])
+                            .append(" ")
+                            .append(ref(operands[i]));
+                }
+            }
+            case BITCAST, TRUNC, ZEXT, FPTOUI -> text.append(instruction.getOperandTypes()[0])
+                    .append(" ")
+                    .append(ref(operands[0]))
+                    .append(" to ")
+                    .append(type);
+            case ICMP, FCMP -> text.append(instruction.getPredicate())
+                    .append(" ")
+                    .append(type)
+                    .append(" ")
+                    .append(ref(operands[0]))
+                    .append(", ")
+                    .append(ref(operands[1]));
+            case SELECT -> text.append("i1 ")
+                    .append(ref(operands[0]))
+                    .append(", ")
+                    .append(type)
+                    .append(" ")
+                    .append(ref(operands[1]))
+                    .append(", ")
+                    .append(type)
+                    .append(" ")
+                    .append(ref(operands[2]));
+            case PHI -> {
+                text.append(type);
+                for (int i = 0; i < operands.length; i++) {
+                    text.append(i == 0 ? " " : ", ")
+                            .append("[ ")
+                            .append(ref(operands[i]))
+                            .append(", ")
+                            .append(blockRef(instruction.getTargets()[i]))
+                            .append(" ]");
+                }
+            }
+            case CALL -> {
+                text.append(instruction.getSignature() != null ? instruction.getSignature() : type)
+                        .append(" @")
+                        .append(instruction.getCallee())
+                        .append("(");
+                for (int i = 0; i < operands.length; i++) {
+                    if (i > 0) {
+                        text.append(", ");
+                    }
+                    text.append(instruction.getOperandTypes()[i]).append(" ").append(ref(operands[i]));
+                }
+                text.append(")");
+            }
+            case BR -> {
+                if (instruction.isConditionalBranch()) {
+                    text.append("i1 ")
+                            .append(ref(operands[0]))
+                            .append(", label %")
+                            .append(instruction.getTarget(0).getLabel())
+                            .append(", label %")
+                            .append(instruction.getTarget(1).getLabel());
+                } else {
+                    text.append("label %").append(instruction.getTarget(0).getLabel());
+                }
+            }
+            case RET -> {
+                text.append(type);
+                if (operands.length > 0) {
+                    text.append(" ").append(ref(operands[0]));
+                }
+            }
+            default -> text.append(type)
+                    .append(" ")
+                    .append(ref(operands[0]))
+                    .append(", ")
+                    .append(ref(operands[1]));
+        }
+        if (instruction.getMetadata() != null) {
+            text.append(", ").append(instruction.getMetadata());
+        }
+        return text.toString();
+    }
+
+    private void number(IrFunction function) {
+        numbering.clear();
+        // the unnamed entry block takes %0
+        int next = function.entry().getLabel() == null ? 1 : 0;
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction instruction : block.getInstructions()) {
+                final var result = instruction.getResult();
+                if (result != null && isUnnamed(result)) {
+                    numbering.put(result.getName(), "%" + next++);
+                }
+            }
+        }
+    }
+
+    // the unnamed entry block is %0
+    private static String blockRef(BasicBlock block) {
+        return block.getLabel() == null ? "%0" : "%" + block.getLabel();
+    }
+
+    private String ref(Value value) {
+        final var name = value.getName();
+        if (value instanceof Constant) {
+            return name;
+        }
+        return numbering.getOrDefault(name, name);
+    }
+
+    static boolean isUnnamed(Value value) {
+        if (value instanceof Constant || value.isGlobal()) {
+            return false;
+        }
+        final var name = value.getName();
+        for (int i = 1; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return name.length() > 1;
+    }
+
+    private void line(String text) throws IOException {
+        writer.write(text);
+        writer.write('\n');
+    }
+}
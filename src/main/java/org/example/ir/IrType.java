@@ -0,0 +1,69 @@
+package org.example.ir;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import org.example.type.Type;
+
+public sealed interface IrType {
+    IrType VOID = new Primitive("void");
+    IrType I1 = new Primitive("i1");
+    IrType I8 = new Primitive("i8");
+    IrType I32 = new Primitive("i32");
+    IrType I64 = new Primitive("i64");
+    IrType DOUBLE = new Primitive("double");
+
+    static IrType of(Type type) {
+        return switch (type) {
+            case DOUBLE -> DOUBLE;
+            case INT -> I32;
+            case BOOL -> I1;
+            case STRING -> I8.pointer();
+            case VOID -> VOID;
+            case DYNAMIC -> throw new IllegalArgumentException("Dynamic type has no LLVM representation");
+        };
+    }
+
+    static IrType array(int length, IrType element) {
+        return new ArrayOf(length, element);
+    }
+
+    default IrType pointer() {
+        return new Pointer(this);
+    }
+
+    record Primitive(String name) implements IrType {
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    record ArrayOf(int length, IrType element) implements IrType {
+        @Override
+        public String toString() {
+            return "[" + length + " x " + element + "]";
+        }
+    }
+
+    record Pointer(IrType pointee) implements IrType {
+        @Override
+        public String toString() {
+            return pointee + "*";
+        }
+    }
+
+    record FunctionOf(IrType returnType, List<IrType> parameters, boolean varargs) implements IrType {
+        @Override
+        public String toString() {
+            return returnType + " (" + parameterList() + ")";
+        }
+
+        public String parameterList() {
+            final var text = parameters.stream().map(IrType::toString).collect(Collectors.joining(", "));
+            if (!varargs) {
+                return text;
+            }
+            return text.isEmpty() ? "..." : text + ", ...";
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package org.example.ir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads what the module keeps as text back into values for the {@link BitcodeWriter}: constants such as {@code 42},
+ * {@code 0x400921FB54442D18}, {@code c"%d\0A\00"}, {@code [i32 1, i32 2]}, {@code zeroinitializer}, a string pointer's
+ * {@code getelementptr} or a {@code bitcast} of a global, and metadata nodes such as {@code distinct !{!1, !0}}.
+ */
+final class LiteralParser {
+    private final String text;
+    private int position;
+
+    private LiteralParser(String text) {
+        this.text = text;
+    }
+
+    // A constant of the given type; the text is what the printer writes after the type.
+    static Literal constant(IrType type, String text) {
+        final var parser = new LiteralParser(text);
+        final var literal = parser.literal(type);
+        parser.end();
+        return literal;
+    }
+
+    static Node node(String text) {
+        final var parser = new LiteralParser(text);
+        final boolean distinct = parser.consume("distinct");
+        parser.expect("!{");
+        final var operands = new ArrayList<Object>();
+        if (!parser.consume("}")) {
+            do {
+                operands.add(parser.nodeOperand());
+            } while (parser.consume(","));
+            parser.expect("}");
+        }
+        parser.end();
+        return new Node(distinct, operands);
+    }
+
+    // "!kind !N" attachments of an instruction, as printed after its operands
+    static List<Attachment> attachments(String text) {
+        final var parser = new LiteralParser(text);
+        final var attachments = new ArrayList<Attachment>();
+        do {
+            parser.expect("!");
+            final var kind = parser.word();
+            parser.expect("!");
+            attachments.add(new Attachment(kind, Integer.parseInt(parser.word())));
+        } while (parser.consume(","));
+        parser.end();
+        return attachments;
+    }
+
+    private Object nodeOperand() {
+        if (consume("!\"")) {
+            final int end = text.indexOf('"', position);
+            final var string = text.substring(position, end);
+            position = end + 1;
+            return string;
+        }
+        if (consume("!")) {
+            return new NodeReference(Integer.parseInt(word()));
+        }
+        return literal(type());
+    }
+
+    private Literal literal(IrType type) {
+        if (consume("c\"")) {
+            final int end = text.indexOf('"', position);
+            final var bytes = unescape(text.substring(position, end));
+            position = end + 1;
+            return new Text(type, new String(bytes, StandardCharsets.ISO_8859_1));
+        }
+        if (consume("[")) {
+            final var elements = new ArrayList<Literal>();
+            if (!consume("]")) {
+                do {
+                    elements.add(literal(type()));
+                } while (consume(","));
+                expect("]");
+            }
+            return new Aggregate(type, elements);
+        }
+        if (consume("getelementptr inbounds (")) {
+            final var source = type();
+            final var operands = new ArrayList<Literal>();
+            while (consume(",")) {
+                operands.add(literal(type()));
+            }
+            expect(")");
+            return new GetElementPtr(type, source, operands);
+        }
+        if (consume("bitcast (")) {
+            final var operand = literal(type());
+            expect("to");
+            final var target = type();
+            expect(")");
+            if (!target.equals(type)) {
+                throw new IllegalArgumentException("bitcast to " + target + " used as " + type + ": " + text);
+            }
+            return new Cast(type, operand);
+        }
+        if (consume("@")) {
+            return new GlobalReference(type, word());
+        }
+
+        final var word = word();
+        return switch (word) {
+            case "zeroinitializer", "null" -> new Null(type);
+            case "undef" -> new Undef(type);
+            case "true" -> integer(type, 1);
+            case "false" -> integer(type, 0);
+            default -> {
+                if (type == IrType.DOUBLE) {
+                    yield new Real(
+                            type,
+                            word.startsWith("0x")
+                                    ? Long.parseUnsignedLong(word.substring(2), 16)
+                                    : Double.doubleToRawLongBits(Double.parseDouble(word)));
+                }
+                yield integer(type, Long.parseLong(word));
+            }
+        };
+    }
+
+    // sign-extended from the type's width, the value LLVM itself writes for it (i1 true is -1)
+    private static Int integer(IrType type, long value) {
+        final int shift = Long.SIZE - width(type);
+        return new Int(type, value << shift >> shift);
+    }
+
+    static int width(IrType type) {
+        if (!(type instanceof IrType.Primitive primitive) || !primitive.name().startsWith("i")) {
+            throw new IllegalArgumentException("Not an integer type: " + type);
+        }
+        return Integer.parseInt(primitive.name().substring(1));
+    }
+
+    private IrType type() {
+        IrType type;
+        if (consume("[")) {
+            final int length = Integer.parseInt(word());
+            expect("x");
+            type = IrType.array(length, type());
+            expect("]");
+        } else {
+            final var name = word();
+            type = switch (name) {
+                case "void" -> IrType.VOID;
+                case "i1" -> IrType.I1;
+                case "i8" -> IrType.I8;
+                case "i32" -> IrType.I32;
+                case "i64" -> IrType.I64;
+                case "double" -> IrType.DOUBLE;
+                default -> throw new IllegalArgumentException("Unknown type " + name + " in " + text);};
+        }
+        while (consume("*")) {
+            type = type.pointer();
+        }
+        return type;
+    }
+
+    // \\ is a backslash and \XX a hex byte, like LLVM's lexer reads them; the rest is UTF-8
+    private static byte[] unescape(String content) {
+        final var bytes = new ByteArrayOutputStream(content.length());
+        int start = 0;
+        for (int i = 0; i < content.length(); i++) {
+            if (content.charAt(i) != '\\') {
+                continue;
+            }
+            final boolean backslash = i + 1 < content.length() && content.charAt(i + 1) == '\\';
+            final boolean hex = i + 2 < content.length()
+                    && Character.digit(content.charAt(i + 1), 16) >= 0
+                    && Character.digit(content.charAt(i + 2), 16) >= 0;
+            if (!backslash && !hex) {
+                continue;
+            }
+            bytes.writeBytes(content.substring(start, i).getBytes(StandardCharsets.UTF_8));
+            if (backslash) {
+                bytes.write('\\');
+                i += 1;
+            } else {
+                bytes.write(Integer.parseInt(content.substring(i + 1, i + 3), 16));
+                i += 2;
+            }
+            start = i + 1;
+        }
+        bytes.writeBytes(content.substring(start).getBytes(StandardCharsets.UTF_8));
+        return bytes.toByteArray();
+    }
+
+    // a number, a name or a type's name, up to the next delimiter
+    private String word() {
+        skipSpaces();
+        final int start = position;
+        while (position < text.length() && " ,()[]{}*!\"".indexOf(text.charAt(position)) < 0) {
+            position++;
+        }
+        if (position == start) {
+            throw new IllegalArgumentException("Expected a value at " + start + " in " + text);
+        }
+        return text.substring(start, position);
+    }
+
+    private boolean consume(String token) {
+        skipSpaces();
+        if (!text.startsWith(token, position)) {
+            return false;
+        }
+        position += token.length();
+        return true;
+    }
+
+    private void expect(String token) {
+        if (!consume(token)) {
+            throw new IllegalArgumentException("Expected " + token + " at " + position + " in " + text);
+        }
+    }
+
+    private void end() {
+        skipSpaces();
+        if (position != text.length()) {
+            throw new IllegalArgumentException("Unexpected " + text.substring(position) + " in " + text);
+        }
+    }
+
+    private void skipSpaces() {
+        while (position < text.length() && text.charAt(position) == ' ') {
+            position++;
+        }
+    }
+
+    sealed interface Literal {
+        IrType type();
+    }
+
+    record Int(IrType type, long value) implements Literal {}
+
+    // a double by its bits
+    record Real(IrType type, long bits) implements Literal {}
+
+    // null or zeroinitializer
+    record Null(IrType type) implements Literal {}
+
+    record Undef(IrType type) implements Literal {}
+
+    // a c"..." array, one char per byte
+    record Text(IrType type, String bytes) implements Literal {}
+
+    record Aggregate(IrType type, List<Literal> elements) implements Literal {}
+
+    // bitcast of another constant
+    record Cast(IrType type, Literal operand) implements Literal {}
+
+    record GetElementPtr(IrType type, IrType source, List<Literal> operands) implements Literal {}
+
+    // a global variable or function, a value of the module rather than a constant of its own
+    record GlobalReference(IrType type, String name) implements Literal {}
+
+    // operands are strings, NodeReferences and Literals
+    record Node(boolean distinct, List<Object> operands) {}
+
+    record NodeReference(int number) {}
+
+    record Attachment(String kind, int node) {}
+}
@@ -0,0 +1,47 @@
+package org.example.ir;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum Opcode {
+    ALLOCA("alloca"),
+    LOAD("load"),
+    STORE("store"),
+    GETELEMENTPTR("getelementptr inbounds"),
+    BITCAST("bitcast"),
+    TRUNC("trunc"),
+    ZEXT("zext"),
+    FPTOUI("fptoui"),
+    ADD("add"),
+    FADD("fadd"),
+    SUB("sub"),
+    FSUB("fsub"),
+    MUL("mul"),
+    FMUL("fmul"),
+    SDIV("sdiv"),
+    UDIV("udiv"),
+    UREM("urem"),
+    FDIV("fdiv"),
+    AND("and"),
+    OR("or"),
+    XOR("xor"),
+    ICMP("icmp"),
+    FCMP("fcmp"),
+    SELECT("select"),
+    PHI("phi"),
+    CALL("call"),
+    BR("br"),
+    RET("ret");
+
+    private final String mnemonic;
+
+    public boolean isTerminator() {
+        return this == BR || this == RET;
+    }
+
+    public boolean isBinary() {
+        return ordinal() >= ADD.ordinal() && ordinal() <= XOR.ordinal();
+    }
+}
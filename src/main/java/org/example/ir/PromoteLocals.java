@@ -0,0 +1,295 @@
+package org.example.ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.example.type.Constant;
+import org.example.type.Value;
+
+/**
+ * mem2reg: rewrites scalar i32/double/i1 allocas whose address never escapes (only used as the pointer of loads and
+ * stores) into SSA values, inserting phis on the iterated dominance frontier of their stores and dropping the
+ * alloca, loads and stores.
+ */
+public class PromoteLocals {
+    private static final Set<IrType> PROMOTABLE = Set.of(IrType.I32, IrType.DOUBLE, IrType.I1);
+
+    public void run(IrModule module) {
+        module.getFunctions().forEach(this::run);
+    }
+
+    public void run(IrFunction function) {
+        final var allocas = findPromotable(function);
+        if (allocas.isEmpty()) {
+            return;
+        }
+
+        final var controlFlow = new ControlFlow(function);
+        final var phis = insertPhis(function, controlFlow, allocas);
+        final var replacements = new HashMap<String, Value>();
+        rename(function, controlFlow, allocas, phis, replacements);
+        substitute(function, replacements);
+        removeUnusedPhis(function, phis);
+    }
+
+    private Map<String, Instruction> findPromotable(IrFunction function) {
+        final var candidates = new LinkedHashMap<String, Instruction>();
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction instruction : block.getInstructions()) {
+                if (instruction.getOpcode() == Opcode.ALLOCA && PROMOTABLE.contains(instruction.getType())) {
+                    candidates.put(instruction.getResult().getName(), instruction);
+                }
+            }
+        }
+
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction instruction : block.getInstructions()) {
+                final var operands = instruction.getOperands();
+                for (int i = 0; i < operands.length; i++) {
+                    if (operands[i] instanceof Constant) {
+                        continue;
+                    }
+                    final var name = operands[i].getName();
+                    if (candidates.containsKey(name) && !isAddressUse(instruction, i)) {
+                        candidates.remove(name);
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private static boolean isAddressUse(Instruction instruction, int operand) {
+        return (instruction.getOpcode() == Opcode.LOAD && operand == 0)
+                || (instruction.getOpcode() == Opcode.STORE && operand == 1);
+    }
+
+    private Map<BasicBlock, Map<String, Instruction>> insertPhis(
+            IrFunction function, ControlFlow controlFlow, Map<String, Instruction> allocas) {
+        final var phis = new HashMap<BasicBlock, Map<String, Instruction>>();
+        for (var entry : allocas.entrySet()) {
+            final var name = entry.getKey();
+            final var alloca = entry.getValue();
+
+            final Deque<BasicBlock> worklist = new ArrayDeque<>();
+            for (BasicBlock block : function.getBlocks()) {
+                if (controlFlow.isReachable(block) && storesTo(block, name)) {
+                    worklist.add(block);
+                }
+            }
+
+            final var visited = new HashSet<>(worklist);
+            while (!worklist.isEmpty()) {
+                final var block = worklist.poll();
+                for (BasicBlock frontier : controlFlow.dominanceFrontier(block)) {
+                    final var blockPhis = phis.computeIfAbsent(frontier, b -> new LinkedHashMap<>());
+                    if (blockPhis.containsKey(name)) {
+                        continue;
+                    }
+
+                    final var predecessors = controlFlow.predecessors(frontier);
+                    final var values = new Value[predecessors.size()];
+                    Arrays.fill(values, undef(alloca));
+                    final var result = new Value(
+                            name.substring(1) + "." + frontier.getLabel(),
+                            alloca.getResult().getType());
+                    final var phi =
+                            Instruction.phi(result, alloca.getType(), values, predecessors.toArray(new BasicBlock[0]));
+                    frontier.getInstructions().addFirst(phi);
+                    blockPhis.put(name, phi);
+
+                    if (visited.add(frontier)) {
+                        worklist.add(frontier);
+                    }
+                }
+            }
+        }
+        return phis;
+    }
+
+    private static boolean storesTo(BasicBlock block, String name) {
+        for (Instruction instruction : block.getInstructions()) {
+            if (instruction.getOpcode() == Opcode.STORE
+                    && instruction.getOperand(1).getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void rename(
+            IrFunction function,
+            ControlFlow controlFlow,
+            Map<String, Instruction> allocas,
+            Map<BasicBlock, Map<String, Instruction>> phis,
+            Map<String, Value> replacements) {
+        final var definitions = new HashMap<String, Deque<Value>>();
+        allocas.keySet().forEach(name -> definitions.put(name, new ArrayDeque<>()));
+
+        // iterative walk of the dominator tree; a frame is visited once on the way down and once on the way up
+        record Frame(BasicBlock block, List<String> pushed) {}
+        final Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(function.entry(), null));
+        final var entered = new HashSet<BasicBlock>();
+        while (!stack.isEmpty()) {
+            final var frame = stack.peek();
+            if (!entered.add(frame.block())) {
+                stack.pop();
+                frame.pushed().forEach(name -> definitions.get(name).pop());
+                continue;
+            }
+
+            final var block = frame.block();
+            final var pushed = new ArrayList<String>();
+            stack.pop();
+            stack.push(new Frame(block, pushed));
+
+            phis.getOrDefault(block, Map.of()).forEach((name, phi) -> {
+                definitions.get(name).push(phi.getResult());
+                pushed.add(name);
+            });
+
+            final var iterator = block.getInstructions().listIterator();
+            while (iterator.hasNext()) {
+                final var instruction = iterator.next();
+                final var name = promotedAddress(instruction, allocas);
+                if (name == null) {
+                    continue;
+                }
+
+                switch (instruction.getOpcode()) {
+                    case LOAD -> replacements.put(
+                            instruction.getResult().getName(), current(definitions, name, allocas));
+                    case STORE -> {
+                        definitions.get(name).push(instruction.getOperand(0));
+                        pushed.add(name);
+                    }
+                    default -> {}
+                }
+                iterator.remove();
+            }
+
+            for (BasicBlock successor : new HashSet<>(block.successors())) {
+                phis.getOrDefault(successor, Map.of()).forEach((name, phi) -> {
+                    final var targets = phi.getTargets();
+                    for (int i = 0; i < targets.length; i++) {
+                        if (targets[i] == block) {
+                            phi.setOperand(i, current(definitions, name, allocas));
+                        }
+                    }
+                });
+            }
+
+            final var children = controlFlow.dominatorTreeChildren(block);
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(new Frame(children.get(i), null));
+            }
+        }
+
+        // unreachable code never runs, its loads may read anything
+        for (BasicBlock block : function.getBlocks()) {
+            if (controlFlow.isReachable(block)) {
+                continue;
+            }
+            final var iterator = block.getInstructions().listIterator();
+            while (iterator.hasNext()) {
+                final var instruction = iterator.next();
+                final var name = promotedAddress(instruction, allocas);
+                if (name != null) {
+                    if (instruction.getOpcode() == Opcode.LOAD) {
+                        replacements.put(instruction.getResult().getName(), undef(allocas.get(name)));
+                    }
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    // name of the promoted alloca this alloca/load/store works on, null for anything else
+    private static String promotedAddress(Instruction instruction, Map<String, Instruction> allocas) {
+        final var address =
+                switch (instruction.getOpcode()) {
+                    case ALLOCA -> instruction.getResult();
+                    case LOAD -> instruction.getOperand(0);
+                    case STORE -> instruction.getOperand(1);
+                    default -> null;
+                };
+        if (address == null || address instanceof Constant || !allocas.containsKey(address.getName())) {
+            return null;
+        }
+        return address.getName();
+    }
+
+    private static Value current(Map<String, Deque<Value>> definitions, String name, Map<String, Instruction> allocas) {
+        final var stack = definitions.get(name);
+        return stack.isEmpty() ? undef(allocas.get(name)) : stack.peek();
+    }
+
+    private static Value undef(Instruction alloca) {
+        return new Constant("undef", alloca.getResult().getType());
+    }
+
+    private static void substitute(IrFunction function, Map<String, Value> replacements) {
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction instruction : block.getInstructions()) {
+                final var operands = instruction.getOperands();
+                for (int i = 0; i < operands.length; i++) {
+                    operands[i] = resolve(operands[i], replacements);
+                }
+            }
+        }
+    }
+
+    private static Value resolve(Value value, Map<String, Value> replacements) {
+        while (!(value instanceof Constant) && replacements.containsKey(value.getName())) {
+            value = replacements.get(value.getName());
+        }
+        return value;
+    }
+
+    // a phi survives only if something other than the inserted phis needs it, directly or through other phis
+    private static void removeUnusedPhis(IrFunction function, Map<BasicBlock, Map<String, Instruction>> phis) {
+        final var inserted = new HashMap<String, Instruction>();
+        phis.values().forEach(blockPhis -> blockPhis
+                .values()
+                .forEach(phi -> inserted.put(phi.getResult().getName(), phi)));
+
+        final var live = new HashSet<String>();
+        final Deque<Instruction> worklist = new ArrayDeque<>();
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction instruction : block.getInstructions()) {
+                if (instruction.getResult() == null
+                        || !inserted.containsKey(instruction.getResult().getName())) {
+                    markLive(instruction, inserted, live, worklist);
+                }
+            }
+        }
+        while (!worklist.isEmpty()) {
+            markLive(worklist.poll(), inserted, live, worklist);
+        }
+
+        for (BasicBlock block : function.getBlocks()) {
+            block.getInstructions()
+                    .removeIf(instruction -> instruction.getResult() != null
+                            && inserted.containsKey(instruction.getResult().getName())
+                            && !live.contains(instruction.getResult().getName()));
+        }
+    }
+
+    private static void markLive(
+            Instruction instruction, Map<String, Instruction> inserted, Set<String> live, Deque<Instruction> worklist) {
+        for (Value operand : instruction.getOperands()) {
+            final var name = operand.getName();
+            if (!(operand instanceof Constant) && inserted.containsKey(name) && live.add(name)) {
+                worklist.add(inserted.get(name));
+            }
+        }
+    }
+}
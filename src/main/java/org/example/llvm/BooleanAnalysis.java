@@ -0,0 +1,85 @@
+package org.example.llvm;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import main.java.org.example.ExprParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+
+/**
+ * Works out which nodes of a boolean expression have a value known at compile time, in one bottom-up pass over the
+ * expression: literals with their negations, == and != of two known operands, && with a false operand or only true
+ * ones and || with a true operand or only false ones. The listener looks the results up per node instead of scanning
+ * the subtree again at every level. Operands have no side effects, so skipping the ones that do not matter is safe.
+ */
+final class BooleanAnalysis {
+    // only nodes of the expression analysed last; absent means not known until run time
+    private final Map<ParserRuleContext, Boolean> known = new IdentityHashMap<>();
+
+    void analyze(ExprParser.BooleanExpressionContext ctx) {
+        known.clear();
+        disjunction(ctx.booleanDisjunctionExpression());
+    }
+
+    Boolean valueOf(ParserRuleContext ctx) {
+        return known.get(ctx);
+    }
+
+    private Boolean disjunction(ExprParser.BooleanDisjunctionExpressionContext ctx) {
+        Boolean value = false;
+        for (final var operand : ctx.booleanConjunctionExpression()) {
+            final var operandValue = conjunction(operand);
+            if (Boolean.TRUE.equals(operandValue)) {
+                value = true;
+            } else if (operandValue == null && !Boolean.TRUE.equals(value)) {
+                value = null;
+            }
+        }
+        return remember(ctx, value);
+    }
+
+    private Boolean conjunction(ExprParser.BooleanConjunctionExpressionContext ctx) {
+        Boolean value = true;
+        for (final var operand : ctx.booleanEqualityExpression()) {
+            final var operandValue = equality(operand);
+            if (Boolean.FALSE.equals(operandValue)) {
+                value = false;
+            } else if (operandValue == null && !Boolean.FALSE.equals(value)) {
+                value = null;
+            }
+        }
+        return remember(ctx, value);
+    }
+
+    private Boolean equality(ExprParser.BooleanEqualityExpressionContext ctx) {
+        final var operands = ctx.unaryExpression();
+        if (operands.isEmpty()) {
+            // comparison of arithmetic expressions, left to the constant folder
+            return null;
+        }
+
+        final var left = unary(operands.getFirst());
+        if (operands.size() == 1) {
+            return remember(ctx, left);
+        }
+        final var right = unary(operands.get(1));
+        if (left == null || right == null) {
+            return null;
+        }
+        return remember(ctx, ctx.XAND() != null ? left.equals(right) : !left.equals(right));
+    }
+
+    private Boolean unary(ExprParser.UnaryExpressionContext ctx) {
+        if (ctx.BOOL_VALUE() == null) {
+            return null;
+        }
+        final boolean negated = ctx.NEG().size() % 2 == 1;
+        return remember(ctx, Lexeme.of(ctx.BOOL_VALUE()).isTrue() != negated);
+    }
+
+    private Boolean remember(ParserRuleContext ctx, Boolean value) {
+        if (value != null) {
+            known.put(ctx, value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,422 @@
+package org.example.llvm;
+
+import static org.example.llvm.LLVMGenerator.MEMCPY;
+import static org.example.llvm.LLVMGenerator.MEMCPY_TYPE;
+import static org.example.llvm.LLVMGenerator.STRING_POINTER;
+
+import java.util.List;
+import org.example.ir.BasicBlock;
+import org.example.ir.ElementPointer;
+import org.example.ir.Global;
+import org.example.ir.Instruction;
+import org.example.ir.IrFunction;
+import org.example.ir.IrModule;
+import org.example.ir.IrType;
+import org.example.ir.Opcode;
+import org.example.type.Constant;
+import org.example.type.Type;
+import org.example.type.Value;
+
+/**
+ * The runtime of {@link OutputMode#BUFFERED}, defined in the module itself so it needs nothing but libc. Every print
+ * formats its value straight into one 64 KiB buffer, which goes to {@code write(2)} when the next line does not fit,
+ * before input is read and when main returns. Integers and booleans never go through printf. A double whose six
+ * decimals cannot be off by a rounding tie is formatted from its scaled integer value; the rest (ties, large values,
+ * NaN and infinities) is left to {@code snprintf}, so the output is the same as in the printf mode.
+ *
+ * <p>The functions are defined up front in every module, dead code elimination drops the ones a program never calls.
+ */
+final class BufferedOutput {
+    static final String FLUSH = "out.flush";
+    private static final String RESERVE = "out.reserve";
+    private static final String END = "out.end";
+    private static final String DIGITS = "out.digits";
+    private static final int CAPACITY = 1 << 16;
+    private static final IrType BUFFER_TYPE = IrType.array(CAPACITY, IrType.I8);
+    private static final Value BUFFER = new Value("out.buffer", Type.STRING, true);
+    private static final Value LENGTH = new Value("out.length", Type.INT, true);
+    // '-', 2147483648, newline
+    private static final int INT_LENGTH = 12;
+    // '-', up to 1000000 after rounding, '.', six decimals, newline
+    private static final int FAST_DOUBLE_LENGTH = 16;
+    // '-', the 309 digits of DBL_MAX, '.', six decimals, NUL
+    private static final int DOUBLE_LENGTH = 320;
+    // |x| * 10^6 stays below 2^40, so it is off by at most 2^-13 from the exact product
+    private static final String FAST_DOUBLE_LIMIT = "1.0e6";
+    private static final String TIE_MARGIN = "1.0e-3";
+    private static final IrType.FunctionOf WRITE_TYPE =
+            new IrType.FunctionOf(IrType.I64, List.of(IrType.I32, STRING_POINTER, IrType.I64), false);
+    private static final IrType.FunctionOf STRLEN_TYPE =
+            new IrType.FunctionOf(IrType.I64, List.of(STRING_POINTER), false);
+    private static final IrType.FunctionOf SNPRINTF_TYPE =
+            new IrType.FunctionOf(IrType.I32, List.of(STRING_POINTER, IrType.I64, STRING_POINTER), true);
+    private static final IrType.FunctionOf DOUBLE_INTRINSIC_TYPE =
+            new IrType.FunctionOf(IrType.DOUBLE, List.of(IrType.DOUBLE), false);
+
+    private final IrModule module;
+
+    BufferedOutput(IrModule module) {
+        this.module = module;
+        module.declare("write", WRITE_TYPE);
+        module.declare("strlen", STRLEN_TYPE);
+        module.declare("snprintf", SNPRINTF_TYPE);
+        module.declare("llvm.fabs.f64", DOUBLE_INTRINSIC_TYPE);
+        module.declare("llvm.floor.f64", DOUBLE_INTRINSIC_TYPE);
+        module.declare(MEMCPY, MEMCPY_TYPE);
+        module.addGlobal(new Global("out.buffer", false, BUFFER_TYPE, "zeroinitializer", true));
+        module.addGlobal(new Global("out.length", false, IrType.I32, "0", true));
+        module.addGlobal(new Global("out.format", true, IrType.array(3, IrType.I8), "c\"%f\\00\"", true));
+        defineFlush();
+        defineReserve();
+        defineEnd();
+        defineDigits();
+        defineInt();
+        defineDouble();
+        defineBool();
+        defineString();
+    }
+
+    Instruction print(Value value) {
+        final var type = IrType.of(value.getType());
+        final var callee =
+                switch (value.getType()) {
+                    case INT -> "out.int";
+                    case DOUBLE -> "out.double";
+                    case BOOL -> "out.bool";
+                    case STRING -> "out.string";
+                    default -> throw new IllegalArgumentException("Cannot print " + value.getType());
+                };
+        return Instruction.call(null, IrType.VOID, null, callee, new IrType[] {type}, new Value[] {value});
+    }
+
+    Instruction flush() {
+        return call(null, IrType.VOID, FLUSH);
+    }
+
+    // Writes out the buffered text and empties the buffer.
+    private void defineFlush() {
+        final var function = define(FLUSH, IrType.VOID);
+        final var length = local("length", Type.INT);
+        final var bytes = local("bytes", Type.INT);
+        function.append(Instruction.load(length, IrType.I32, LENGTH));
+        function.append(Instruction.cast(Opcode.ZEXT, bytes, IrType.I32, length, IrType.I64));
+        function.append(write(new ElementPointer("out.buffer", BUFFER_TYPE), bytes));
+        function.append(Instruction.store(IrType.I32, integer(0), LENGTH));
+        function.append(Instruction.ret(IrType.VOID, null));
+    }
+
+    // Returns where the next bytes (at most the whole buffer) go, flushing first if they do not fit.
+    private void defineReserve() {
+        final var bytes = local("bytes", Type.INT);
+        final var function = define(RESERVE, STRING_POINTER, bytes);
+        final var entry = function.entry();
+        final var flush = function.block("flush");
+        final var reserved = function.block("reserved");
+        final var length = local("length", Type.INT);
+        final var end = local("end", Type.INT);
+        final var full = local("full", Type.BOOL);
+        function.append(Instruction.load(length, IrType.I32, LENGTH));
+        function.append(Instruction.binary(Opcode.ADD, end, IrType.I32, length, bytes));
+        function.append(Instruction.compare(Opcode.ICMP, "ugt", full, IrType.I32, end, integer(CAPACITY)));
+        function.append(Instruction.branch(full, flush, reserved));
+
+        function.startBlock(flush);
+        function.append(flush());
+        function.append(Instruction.branch(reserved));
+
+        function.startBlock(reserved);
+        final var start = local("start", Type.INT);
+        final var at = local("at", Type.STRING);
+        function.append(
+                Instruction.phi(start, IrType.I32, new Value[] {length, integer(0)}, new BasicBlock[] {entry, flush}));
+        function.append(Instruction.elementPointer(at, BUFFER_TYPE, BUFFER, IrType.I32, integer(0), start));
+        function.append(Instruction.ret(STRING_POINTER, at));
+    }
+
+    // Ends the line of count bytes written at the reserved position and takes it into the buffer.
+    private void defineEnd() {
+        final var at = local("at", Type.STRING);
+        final var count = local("count", Type.INT);
+        final var function = define(END, IrType.VOID, at, count);
+        final var newline = local("newline", Type.STRING);
+        final var length = local("length", Type.INT);
+        final var written = local("written", Type.INT);
+        final var next = local("next", Type.INT);
+        function.append(Instruction.elementPointer(newline, IrType.I8, at, IrType.I32, count));
+        function.append(Instruction.store(IrType.I8, integer('\n'), newline));
+        function.append(Instruction.load(length, IrType.I32, LENGTH));
+        function.append(Instruction.binary(Opcode.ADD, written, IrType.I32, count, integer(1)));
+        function.append(Instruction.binary(Opcode.ADD, next, IrType.I32, length, written));
+        function.append(Instruction.store(IrType.I32, next, LENGTH));
+        function.append(Instruction.ret(IrType.VOID, null));
+    }
+
+    // Writes the decimal digits of an unsigned value to at and returns how many there are.
+    private void defineDigits() {
+        final var at = local("at", Type.STRING);
+        final var value = local("value", Type.INT);
+        final var function = define(DIGITS, IrType.I32, at, value);
+        final var entry = function.entry();
+        final var digit = function.block("digit");
+        final var copy = function.block("copy");
+        // 4294967295 has the most digits, they are produced last first from the end of the scratch array
+        final var scratchType = IrType.array(10, IrType.I8);
+        final var scratch = local("scratch", Type.STRING);
+        function.append(Instruction.alloca(scratch, scratchType));
+        function.append(Instruction.branch(digit));
+
+        function.startBlock(digit);
+        final var rest = local("rest", Type.INT);
+        final var count = local("count", Type.INT);
+        final var quotient = local("quotient", Type.INT);
+        final var remainder = local("remainder", Type.INT);
+        final var code = local("code", Type.INT);
+        final var character = local("character", Type.INT);
+        final var position = local("position", Type.INT);
+        final var slot = local("slot", Type.STRING);
+        final var counted = local("counted", Type.INT);
+        final var more = local("more", Type.BOOL);
+        function.append(
+                Instruction.phi(rest, IrType.I32, new Value[] {value, quotient}, new BasicBlock[] {entry, digit}));
+        function.append(
+                Instruction.phi(count, IrType.I32, new Value[] {integer(0), counted}, new BasicBlock[] {entry, digit}));
+        function.append(Instruction.binary(Opcode.UDIV, quotient, IrType.I32, rest, integer(10)));
+        function.append(Instruction.binary(Opcode.UREM, remainder, IrType.I32, rest, integer(10)));
+        function.append(Instruction.binary(Opcode.ADD, code, IrType.I32, remainder, integer('0')));
+        function.append(Instruction.cast(Opcode.TRUNC, character, IrType.I32, code, IrType.I8));
+        function.append(Instruction.binary(Opcode.SUB, position, IrType.I32, integer(9), count));
+        function.append(Instruction.elementPointer(slot, scratchType, scratch, IrType.I32, integer(0), position));
+        function.append(Instruction.store(IrType.I8, character, slot));
+        function.append(Instruction.binary(Opcode.ADD, counted, IrType.I32, count, integer(1)));
+        function.append(Instruction.compare(Opcode.ICMP, "ne", more, IrType.I32, quotient, integer(0)));
+        function.append(Instruction.branch(more, digit, copy));
+
+        function.startBlock(copy);
+        final var first = local("first", Type.INT);
+        final var from = local("from", Type.STRING);
+        final var bytes = local("bytes", Type.INT);
+        function.append(Instruction.binary(Opcode.SUB, first, IrType.I32, integer(10), counted));
+        function.append(Instruction.elementPointer(from, scratchType, scratch, IrType.I32, integer(0), first));
+        function.append(Instruction.cast(Opcode.ZEXT, bytes, IrType.I32, counted, IrType.I64));
+        function.append(memcpy(at, from, bytes));
+        function.append(Instruction.ret(IrType.I32, counted));
+    }
+
+    private void defineInt() {
+        final var value = local("value", Type.INT);
+        final var function = define("out.int", IrType.VOID, value);
+        final var negative = local("negative", Type.BOOL);
+        final var negated = local("negated", Type.INT);
+        final var magnitude = local("magnitude", Type.INT);
+        function.append(Instruction.compare(Opcode.ICMP, "slt", negative, IrType.I32, value, integer(0)));
+        // -2147483648 stays itself, which is right read as unsigned
+        function.append(Instruction.binary(Opcode.SUB, negated, IrType.I32, integer(0), value));
+        function.append(Instruction.select(magnitude, IrType.I32, negative, negated, value));
+        final var at = call(local("at", Type.STRING), STRING_POINTER, RESERVE, integer(INT_LENGTH));
+        function.append(at);
+        final var count = signedDigits(function, at.getResult(), negative, magnitude, "");
+        function.append(call(null, IrType.VOID, END, at.getResult(), count));
+        function.append(Instruction.ret(IrType.VOID, null));
+    }
+
+    private void defineDouble() {
+        final var value = local("value", Type.DOUBLE);
+        final var function = define("out.double", IrType.VOID, value);
+        final var scale = function.block("scale");
+        final var fast = function.block("fast");
+        final var library = function.block("library");
+        final var bits = local("bits", Type.INT);
+        final var negative = local("negative", Type.BOOL);
+        final var magnitude = local("magnitude", Type.DOUBLE);
+        final var small = local("small", Type.BOOL);
+        // the sign bit, so that -0.0 and small negative values print as -0.000000 like printf does
+        function.append(Instruction.bitcast(bits, IrType.DOUBLE, value, IrType.I64));
+        function.append(Instruction.compare(Opcode.ICMP, "slt", negative, IrType.I64, bits, integer(0)));
+        function.append(call(magnitude, IrType.DOUBLE, "llvm.fabs.f64", value));
+        // false for NaN too
+        function.append(
+                Instruction.compare(Opcode.FCMP, "olt", small, IrType.DOUBLE, magnitude, real(FAST_DOUBLE_LIMIT)));
+        function.append(Instruction.branch(small, scale, library));
+
+        function.startBlock(scale);
+        final var scaled = local("scaled", Type.DOUBLE);
+        final var whole = local("whole", Type.DOUBLE);
+        final var fraction = local("fraction", Type.DOUBLE);
+        final var offset = local("offset", Type.DOUBLE);
+        final var distance = local("distance", Type.DOUBLE);
+        final var clear = local("clear", Type.BOOL);
+        function.append(Instruction.binary(Opcode.FMUL, scaled, IrType.DOUBLE, magnitude, real(FAST_DOUBLE_LIMIT)));
+        function.append(call(whole, IrType.DOUBLE, "llvm.floor.f64", scaled));
+        function.append(Instruction.binary(Opcode.FSUB, fraction, IrType.DOUBLE, scaled, whole));
+        function.append(Instruction.binary(Opcode.FSUB, offset, IrType.DOUBLE, fraction, real("0.5")));
+        function.append(call(distance, IrType.DOUBLE, "llvm.fabs.f64", offset));
+        function.append(Instruction.compare(Opcode.FCMP, "ogt", clear, IrType.DOUBLE, distance, real(TIE_MARGIN)));
+        function.append(Instruction.branch(clear, fast, library));
+
+        // rounded to millionths, then printed as the integer part, and the fraction plus 10^6 with its 1 made a '.'
+        function.startBlock(fast);
+        final var up = local("up", Type.BOOL);
+        final var truncated = local("truncated", Type.INT);
+        final var carry = local("carry", Type.INT);
+        final var millionths = local("millionths", Type.INT);
+        final var integerPart = local("integer_part", Type.INT);
+        final var integerValue = local("integer_value", Type.INT);
+        final var fractionPart = local("fraction_part", Type.INT);
+        final var fractionValue = local("fraction_value", Type.INT);
+        final var padded = local("padded", Type.INT);
+        function.append(Instruction.compare(Opcode.FCMP, "ogt", up, IrType.DOUBLE, fraction, real("0.5")));
+        function.append(Instruction.cast(Opcode.FPTOUI, truncated, IrType.DOUBLE, whole, IrType.I64));
+        function.append(Instruction.cast(Opcode.ZEXT, carry, IrType.I1, up, IrType.I64));
+        function.append(Instruction.binary(Opcode.ADD, millionths, IrType.I64, truncated, carry));
+        function.append(Instruction.binary(Opcode.UDIV, integerPart, IrType.I64, millionths, integer(1_000_000)));
+        function.append(Instruction.cast(Opcode.TRUNC, integerValue, IrType.I64, integerPart, IrType.I32));
+        function.append(Instruction.binary(Opcode.UREM, fractionPart, IrType.I64, millionths, integer(1_000_000)));
+        function.append(Instruction.cast(Opcode.TRUNC, fractionValue, IrType.I64, fractionPart, IrType.I32));
+        function.append(Instruction.binary(Opcode.ADD, padded, IrType.I32, fractionValue, integer(1_000_000)));
+        final var at = call(local("at", Type.STRING), STRING_POINTER, RESERVE, integer(FAST_DOUBLE_LENGTH));
+        function.append(at);
+        final var integerCount = signedDigits(function, at.getResult(), negative, integerValue, "_integer");
+        final var point = local("point", Type.STRING);
+        final var fractionCount = local("fraction_count", Type.INT);
+        final var count = local("count", Type.INT);
+        function.append(Instruction.elementPointer(point, IrType.I8, at.getResult(), IrType.I32, integerCount));
+        function.append(call(fractionCount, IrType.I32, DIGITS, point, padded));
+        function.append(Instruction.store(IrType.I8, integer('.'), point));
+        function.append(Instruction.binary(Opcode.ADD, count, IrType.I32, integerCount, fractionCount));
+        function.append(call(null, IrType.VOID, END, at.getResult(), count));
+        function.append(Instruction.ret(IrType.VOID, null));
+
+        function.startBlock(library);
+        final var libraryAt = call(local("library_at", Type.STRING), STRING_POINTER, RESERVE, integer(DOUBLE_LENGTH));
+        final var printed = local("printed", Type.INT);
+        function.append(libraryAt);
+        function.append(Instruction.call(
+                printed,
+                IrType.I32,
+                SNPRINTF_TYPE,
+                "snprintf",
+                new IrType[] {STRING_POINTER, IrType.I64, STRING_POINTER, IrType.DOUBLE},
+                new Value[] {
+                    libraryAt.getResult(),
+                    integer(DOUBLE_LENGTH),
+                    new ElementPointer("out.format", IrType.array(3, IrType.I8)),
+                    value
+                }));
+        // the newline goes over the NUL
+        function.append(call(null, IrType.VOID, END, libraryAt.getResult(), printed));
+        function.append(Instruction.ret(IrType.VOID, null));
+    }
+
+    private void defineBool() {
+        final var value = local("value", Type.BOOL);
+        final var function = define("out.bool", IrType.VOID, value);
+        final var text = local("text", Type.STRING);
+        final var count = local("count", Type.INT);
+        final var bytes = local("bytes", Type.INT);
+        // the texts printf_boolean prints with
+        function.append(Instruction.select(
+                text,
+                STRING_POINTER,
+                value,
+                new ElementPointer("true_text", IrType.array(5, IrType.I8)),
+                new ElementPointer("false_text", IrType.array(6, IrType.I8))));
+        function.append(Instruction.select(count, IrType.I32, value, integer(4), integer(5)));
+        function.append(Instruction.cast(Opcode.ZEXT, bytes, IrType.I32, count, IrType.I64));
+        final var at = call(local("at", Type.STRING), STRING_POINTER, RESERVE, integer(6));
+        function.append(at);
+        function.append(memcpy(at.getResult(), text, bytes));
+        function.append(call(null, IrType.VOID, END, at.getResult(), count));
+        function.append(Instruction.ret(IrType.VOID, null));
+    }
+
+    private void defineString() {
+        final var text = local("text", Type.STRING);
+        final var function = define("out.string", IrType.VOID, text);
+        final var buffered = function.block("buffered");
+        final var direct = function.block("direct");
+        final var length = local("length", Type.INT);
+        final var fits = local("fits", Type.BOOL);
+        function.append(Instruction.call(
+                length, IrType.I64, null, "strlen", new IrType[] {STRING_POINTER}, new Value[] {text}));
+        function.append(Instruction.compare(Opcode.ICMP, "ult", fits, IrType.I64, length, integer(CAPACITY)));
+        function.append(Instruction.branch(fits, buffered, direct));
+
+        function.startBlock(buffered);
+        final var count = local("count", Type.INT);
+        final var bytes = local("bytes", Type.INT);
+        function.append(Instruction.cast(Opcode.TRUNC, count, IrType.I64, length, IrType.I32));
+        function.append(Instruction.binary(Opcode.ADD, bytes, IrType.I32, count, integer(1)));
+        final var at = call(local("at", Type.STRING), STRING_POINTER, RESERVE, bytes);
+        function.append(at);
+        function.append(memcpy(at.getResult(), text, length));
+        function.append(call(null, IrType.VOID, END, at.getResult(), count));
+        function.append(Instruction.ret(IrType.VOID, null));
+
+        // longer than the buffer: whatever is buffered goes first, then the text itself
+        function.startBlock(direct);
+        function.append(flush());
+        function.append(write(text, length));
+        final var newline = call(local("newline", Type.STRING), STRING_POINTER, RESERVE, integer(1));
+        function.append(newline);
+        function.append(call(null, IrType.VOID, END, newline.getResult(), integer(0)));
+        function.append(Instruction.ret(IrType.VOID, null));
+    }
+
+    // Writes '-' (overwritten by the first digit unless negative) and the digits of magnitude after it at at.
+    private static Value signedDigits(IrFunction function, Value at, Value negative, Value magnitude, String suffix) {
+        final var sign = local("sign" + suffix, Type.INT);
+        final var digitsAt = local("digits_at" + suffix, Type.STRING);
+        final var digits = local("digits" + suffix, Type.INT);
+        final var count = local("signed" + suffix, Type.INT);
+        function.append(Instruction.store(IrType.I8, integer('-'), at));
+        function.append(Instruction.cast(Opcode.ZEXT, sign, IrType.I1, negative, IrType.I32));
+        function.append(Instruction.elementPointer(digitsAt, IrType.I8, at, IrType.I32, sign));
+        function.append(call(digits, IrType.I32, DIGITS, digitsAt, magnitude));
+        function.append(Instruction.binary(Opcode.ADD, count, IrType.I32, sign, digits));
+        return count;
+    }
+
+    private IrFunction define(String name, IrType returnType, Value... parameters) {
+        final var function = new IrFunction(name, returnType, List.of(parameters), "nounwind");
+        module.addFunction(function);
+        return function;
+    }
+
+    // A call to a runtime function or intrinsic; the argument types come from the values.
+    private static Instruction call(Value result, IrType returnType, String callee, Value... arguments) {
+        final var types = new IrType[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            types[i] = IrType.of(arguments[i].getType());
+        }
+        return Instruction.call(result, returnType, null, callee, types, arguments);
+    }
+
+    private static Instruction write(Value text, Value bytes) {
+        return Instruction.call(
+                null, IrType.I64, null, "write", new IrType[] {IrType.I32, STRING_POINTER, IrType.I64}, new Value[] {
+                    integer(1), text, bytes
+                });
+    }
+
+    private static Instruction memcpy(Value to, Value from, Value bytes) {
+        return Instruction.call(
+                null,
+                IrType.VOID,
+                null,
+                MEMCPY,
+                new IrType[] {STRING_POINTER, STRING_POINTER, IrType.I64, IrType.I1},
+                new Value[] {to, from, bytes, new Constant("false", Type.BOOL)});
+    }
+
+    private static Value local(String name, Type type) {
+        return new Value(name, type);
+    }
+
+    private static Constant integer(long value) {
+        return new Constant(String.valueOf(value), Type.INT);
+    }
+
+    private static Constant real(String value) {
+        return new Constant(value, Type.DOUBLE);
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.llvm;
+
+public class CompilationException extends RuntimeException {
+    public CompilationException(String message) {
+        super(message);
+    }
+}
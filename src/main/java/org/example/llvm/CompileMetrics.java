@@ -0,0 +1,89 @@
+package org.example.llvm;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.example.ir.IrModule;
+
+/**
+ * Collects wall time and allocated bytes per phase for one compilation, on the compiling thread. Phases may nest (the
+ * tree walk ends in writing the module); the enclosing phase is paused meanwhile, so every phase is counted once.
+ */
+class CompileMetrics {
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private final Map<String, long[]> totals = new LinkedHashMap<>();
+    private final Deque<Phase> open = new ArrayDeque<>();
+    private CompileReport.Counts counts;
+
+    Phase phase(String name) {
+        final var phase = new Phase(name);
+        if (!open.isEmpty()) {
+            open.peek().pause();
+        }
+        open.push(phase);
+        phase.resume();
+        return phase;
+    }
+
+    void count(IrModule module) {
+        counts = CompileReport.Counts.of(module);
+    }
+
+    CompileReport report(String source, boolean cached) {
+        final Map<String, CompileReport.Phase> phases = new LinkedHashMap<>();
+        totals.forEach((name, total) -> phases.put(name, new CompileReport.Phase(total[0], total[1])));
+        return new CompileReport(source, cached, phases, counts);
+    }
+
+    private static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    // The per-thread allocation counter is HotSpot specific and not kept for virtual threads (it reads -1 there);
+    // allocated bytes are reported as -1 without it.
+    private static com.sun.management.ThreadMXBean threads() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported()
+                && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads;
+        }
+        return null;
+    }
+
+    class Phase implements AutoCloseable {
+        private final long[] total;
+        private long nanos;
+        private long bytes;
+
+        private Phase(String name) {
+            total = totals.computeIfAbsent(name, key -> new long[] {0, 0});
+        }
+
+        private void resume() {
+            nanos = System.nanoTime();
+            bytes = allocatedBytes();
+        }
+
+        private void pause() {
+            total[0] += System.nanoTime() - nanos;
+            final long allocated = allocatedBytes();
+            if (bytes < 0 || allocated < 0 || total[1] < 0) {
+                total[1] = -1;
+            } else {
+                total[1] += allocated - bytes;
+            }
+        }
+
+        @Override
+        public void close() {
+            pause();
+            open.pop();
+            if (!open.isEmpty()) {
+                open.peek().resume();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.llvm;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import org.example.cache.CompilationCache;
+
+// toString() is part of the compilation cache key, so everything that can change the output must be a field here
+@Builder(toBuilder = true)
+@Getter
+@ToString
+public class CompileOptions {
+    @Builder.Default
+    private ParsingMode parsingMode = ParsingMode.TWO_STAGE;
+
+    @Builder.Default
+    private boolean constantFolding = true;
+
+    // unreachable blocks, unused values, stored-only memory and unreferenced globals dropped before printing
+    @Builder.Default
+    private boolean deadCodeElimination = true;
+
+    // mem2reg on the generated module, so lli gets SSA code without a separate opt run
+    @Builder.Default
+    private boolean promoteLocals = false;
+
+    // llvm.loop.unroll.count hint on repeat and for loops, 0 leaves unrolling to LLVM
+    @Builder.Default
+    private int loopUnrollCount = 0;
+
+    // -1 leaves the module unoptimized; 0..3 runs opt at that level, see LlvmToolchain
+    @Builder.Default
+    private int optimizationLevel = -1;
+
+    @Builder.Default
+    private OutputFormat outputFormat = OutputFormat.LL;
+
+    // how print reaches stdout: a printf call each or the buffered runtime
+    @Builder.Default
+    private OutputMode outputMode = OutputMode.PRINTF;
+
+    // directory with opt, llc and clang, null to look them up on PATH; the cache key has the tools' fingerprint instead
+    @ToString.Exclude
+    private String llvmBin;
+
+    // arrays and matrices larger than this many bytes are calloc'ed instead of taking the stack
+    @Builder.Default
+    private long heapArrayThreshold = 16 * 1024;
+
+    // memory-mapped source, parsed and translated one top-level statement at a time; same output
+    @Builder.Default
+    @ToString.Exclude
+    private boolean streamingInput = false;
+
+    @ToString.Exclude
+    private CompilationCache cache;
+
+    public static CompileOptions defaults() {
+        return builder().build();
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.llvm;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.example.ir.IrModule;
+import org.example.ir.IrType;
+import org.example.ir.Opcode;
+
+/**
+ * What one compilation did: wall time and allocated bytes per phase in the order they ran, and the size of the
+ * generated module. A cache hit has no counts, since nothing was generated.
+ */
+public record CompileReport(String source, boolean cached, Map<String, Phase> phases, Counts counts) {
+
+    // allocatedBytes is -1 when the JVM cannot measure per-thread allocation
+    public record Phase(long nanos, long allocatedBytes) {}
+
+    public record Counts(
+            int functions, int basicBlocks, int labels, int instructions, int allocas, int stringConstants) {
+        static Counts of(IrModule module) {
+            int basicBlocks = 0;
+            int labels = 0;
+            int instructions = 0;
+            int allocas = 0;
+            for (var function : module.getFunctions()) {
+                for (var block : function.getBlocks()) {
+                    basicBlocks++;
+                    if (block.getLabel() != null) {
+                        labels++;
+                    }
+                    for (var instruction : block.getInstructions()) {
+                        instructions++;
+                        if (instruction.getOpcode() == Opcode.ALLOCA) {
+                            allocas++;
+                        }
+                    }
+                }
+            }
+            // literals and format strings; array and matrix initializers are constants too, but not of i8
+            final var strings = (int) module.getGlobals().values().stream()
+                    .filter(global -> global.constant()
+                            && global.type() instanceof IrType.ArrayOf array
+                            && array.element() == IrType.I8)
+                    .count();
+            return new Counts(module.getFunctions().size(), basicBlocks, labels, instructions, allocas, strings);
+        }
+    }
+
+    public static String toJson(List<CompileReport> reports) {
+        return reports.stream().map(CompileReport::toJson).collect(Collectors.joining(",\n", "[\n", "\n]\n"));
+    }
+
+    public long totalNanos() {
+        return phases.values().stream().mapToLong(Phase::nanos).sum();
+    }
+
+    public String format() {
+        final var builder = new StringBuilder();
+        builder.append(
+                String.format(Locale.ROOT, "%s%s: %.2f ms%n", source, cached ? " (cached)" : "", totalNanos() / 1e6));
+        phases.forEach((name, phase) -> builder.append(String.format(
+                Locale.ROOT,
+                "  %-10s %9.2f ms %12s%n",
+                name,
+                phase.nanos() / 1e6,
+                phase.allocatedBytes() < 0 ? "" : phase.allocatedBytes() + " B")));
+        if (counts != null) {
+            builder.append(String.format(
+                    Locale.ROOT,
+                    "  %d function(s), %d block(s), %d label(s), %d instruction(s), %d alloca(s), %d string constant(s)%n",
+                    counts.functions(),
+                    counts.basicBlocks(),
+                    counts.labels(),
+                    counts.instructions(),
+                    counts.allocas(),
+                    counts.stringConstants()));
+        }
+        return builder.toString();
+    }
+
+    public String toJson() {
+        final var phasesJson = phases.entrySet().stream()
+                .map(entry -> String.format(
+                        Locale.ROOT,
+                        "\"%s\":{\"nanos\":%d,\"allocatedBytes\":%d}",
+                        entry.getKey(),
+                        entry.getValue().nanos(),
+                        entry.getValue().allocatedBytes()))
+                .collect(Collectors.joining(",", "{", "}"));
+        final var countsJson = counts == null
+                ? "null"
+                : String.format(
+                        Locale.ROOT,
+                        "{\"functions\":%d,\"basicBlocks\":%d,\"labels\":%d,\"instructions\":%d,\"allocas\":%d,"
+                                + "\"stringConstants\":%d}",
+                        counts.functions(),
+                        counts.basicBlocks(),
+                        counts.labels(),
+                        counts.instructions(),
+                        counts.allocas(),
+                        counts.stringConstants());
+        return String.format(
+                Locale.ROOT,
+                "{\"source\":\"%s\",\"cached\":%b,\"totalNanos\":%d,\"phases\":%s,\"counts\":%s}",
+                escape(source),
+                cached,
+                totalNanos(),
+                phasesJson,
+                countsJson);
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
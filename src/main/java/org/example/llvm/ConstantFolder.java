@@ -0,0 +1,104 @@
+package org.example.llvm;
+
+import java.util.Optional;
+import lombok.experimental.UtilityClass;
+import org.example.type.Constant;
+import org.example.type.Type;
+import org.example.type.Value;
+
+/**
+ * Evaluates binary operators on two {@link Constant} operands at compile time. Integers follow LLVM i32 semantics
+ * (two's complement wrap-around), doubles follow IEEE 754 and are rendered in LLVM's exact hexadecimal form. Anything
+ * LLVM treats as undefined behaviour, like division by zero, is left for the generator to emit.
+ */
+@UtilityClass
+class ConstantFolder {
+    public Optional<Value> fold(Operator operator, Value left, Value right, boolean isGlobal) {
+        if (!(left instanceof Constant) || !(right instanceof Constant) || left.getType() != right.getType()) {
+            return Optional.empty();
+        }
+
+        try {
+            return switch (left.getType()) {
+                case INT -> foldInt(operator, parseInt(left), parseInt(right), isGlobal);
+                case DOUBLE -> foldDouble(operator, parseDouble(left), parseDouble(right), isGlobal);
+                case BOOL -> foldBool(operator, parseBool(left), parseBool(right), isGlobal);
+                default -> Optional.empty();
+            };
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private Optional<Value> foldInt(Operator operator, int left, int right, boolean isGlobal) {
+        return switch (operator) {
+            case ADD -> intConstant(left + right, isGlobal);
+            case SUB -> intConstant(left - right, isGlobal);
+            case MUL -> intConstant(left * right, isGlobal);
+            case DIV -> right == 0 || (left == Integer.MIN_VALUE && right == -1)
+                    ? Optional.empty()
+                    : intConstant(left / right, isGlobal);
+            case EQ -> boolConstant(left == right, isGlobal);
+            case NE -> boolConstant(left != right, isGlobal);
+            default -> Optional.empty();
+        };
+    }
+
+    private Optional<Value> foldDouble(Operator operator, double left, double right, boolean isGlobal) {
+        return switch (operator) {
+            case ADD -> doubleConstant(left + right, isGlobal);
+            case SUB -> doubleConstant(left - right, isGlobal);
+            case MUL -> doubleConstant(left * right, isGlobal);
+            case DIV -> doubleConstant(left / right, isGlobal);
+            case EQ -> boolConstant(left == right, isGlobal);
+            case NE -> boolConstant(left != right, isGlobal);
+            default -> Optional.empty();
+        };
+    }
+
+    private Optional<Value> foldBool(Operator operator, boolean left, boolean right, boolean isGlobal) {
+        return switch (operator) {
+            case EQ -> boolConstant(left == right, isGlobal);
+            case NE -> boolConstant(left != right, isGlobal);
+            default -> Optional.empty();
+        };
+    }
+
+    private int parseInt(Value value) {
+        final long parsed = Long.parseLong(value.getName());
+        if (parsed < Integer.MIN_VALUE || parsed > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Not an i32 constant: " + value.getName());
+        }
+        return (int) parsed;
+    }
+
+    private double parseDouble(Value value) {
+        final var text = value.getName();
+        if (text.startsWith("0x")) {
+            return Double.longBitsToDouble(Long.parseUnsignedLong(text.substring(2), 16));
+        }
+        return Double.parseDouble(text);
+    }
+
+    private boolean parseBool(Value value) {
+        return switch (value.getName()) {
+            case "true", "1" -> true;
+            case "false", "0" -> false;
+            default -> throw new NumberFormatException("Not a bool constant: " + value.getName());
+        };
+    }
+
+    private Optional<Value> intConstant(int value, boolean isGlobal) {
+        return Optional.of(new Constant(Integer.toString(value), Type.INT, isGlobal));
+    }
+
+    private Optional<Value> doubleConstant(double value, boolean isGlobal) {
+        // hexadecimal is the only double syntax LLVM reads back bit for bit
+        return Optional.of(
+                new Constant(String.format("0x%016X", Double.doubleToRawLongBits(value)), Type.DOUBLE, isGlobal));
+    }
+
+    private Optional<Value> boolConstant(boolean value, boolean isGlobal) {
+        return Optional.of(new Constant(Boolean.toString(value), Type.BOOL, isGlobal));
+    }
+}
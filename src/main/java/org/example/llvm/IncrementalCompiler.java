@@ -0,0 +1,180 @@
+package org.example.llvm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import main.java.org.example.ExprParser;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.WritableToken;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+/**
+ * Recompiles one program over and over as it is edited, e.g. on every keystroke in an editor. The top-level statements
+ * ({@code expr}, function definitions included) of the previous version are kept with their parse trees. After an edit
+ * only the text from the first touched statement is re-lexed and re-parsed, until a new statement starts where an
+ * unchanged old one did; the old trees from there on are reused. Every statement sees the variables, functions and
+ * counters left by the ones before it, so emission rolls back to the last checkpoint before the first changed
+ * statement and re-walks from there. Dead code elimination would rewrite the module the checkpoints point into, so it
+ * is left out and the output keeps the code a full compile drops.
+ */
+public class IncrementalCompiler {
+    private static final int CHECKPOINT_INTERVAL = 16;
+
+    private final CompileOptions options;
+    private final LLVMActions actions;
+    // reused trees and re-lexed statements share the interned identifiers
+    private final LexemeFactory lexemes = new LexemeFactory();
+    private final List<Statement> statements = new ArrayList<>();
+    // checkpoints.get(i) is the state before statement i * CHECKPOINT_INTERVAL
+    private final List<LLVMActions.Checkpoint> checkpoints = new ArrayList<>();
+    private int[] source = new int[0];
+    // statements walked in order since the last restore; a failed walk leaves the state undefined after this one
+    private int emitted = 0;
+
+    public IncrementalCompiler(String output, CompileOptions options) {
+        if (options.isPromoteLocals()) {
+            throw new CompilationException(
+                    "--mem2reg cannot be used with --watch: it rewrites the module that incremental compilation keeps");
+        }
+        this.options = options.toBuilder().deadCodeElimination(false).build();
+        this.actions = new LLVMActions(output, new LLVMGenerator(this.options), this.options);
+        checkpoints.add(actions.checkpoint());
+    }
+
+    // Compiles the new version of the program to the output file and returns how many statements were re-walked.
+    public int compile(String text) throws IOException {
+        final int[] next = text.codePoints().toArray();
+        if (Arrays.equals(source, next) && emitted == statements.size()) {
+            return 0;
+        }
+
+        final int mismatch = Arrays.mismatch(source, next);
+        final int prefix = mismatch < 0 ? source.length : mismatch;
+        final int suffix = commonSuffix(source, next, prefix);
+
+        // a statement ending at least one character before the edit lexes and parses exactly as before
+        int first = 0;
+        while (first < statements.size() && statements.get(first).stop() < prefix - 1) {
+            first++;
+        }
+
+        final var tail = reparse(next, first, next.length - suffix, next.length - source.length);
+        statements.subList(first, statements.size()).clear();
+        statements.addAll(tail);
+        source = next;
+        return emit(first);
+    }
+
+    private List<Statement> reparse(int[] next, int first, int unchangedFrom, int delta) {
+        final Map<Integer, Integer> oldStarts = new HashMap<>();
+        for (int i = first; i < statements.size(); i++) {
+            oldStarts.put(statements.get(i).start(), i);
+        }
+
+        final CharStream chars = CharStreams.fromString(new String(next, 0, next.length));
+        final var lexer = LexemeFactory.lexer(chars, lexemes);
+        if (first > 0) {
+            // reused tokens keep the character indexes of the text they were lexed from, so use the tracked offset
+            final var previous = statements.get(first - 1);
+            final int offset = previous.stop() + 1;
+            int lineStart = offset;
+            while (lineStart > 0 && next[lineStart - 1] != '\n') {
+                lineStart--;
+            }
+            chars.seek(offset);
+            lexer.setLine(previous.tree().getStop().getLine());
+            lexer.setCharPositionInLine(offset - lineStart);
+        }
+
+        final var tokens = new UnbufferedTokenStream<Token>(lexer);
+        final var parser = new ExprParser(tokens);
+        final List<Statement> parsed = new ArrayList<>();
+        while (tokens.LA(1) != Token.EOF) {
+            final Token start = tokens.LT(1);
+            final Integer old =
+                    start.getStartIndex() >= unchangedFrom ? oldStarts.get(start.getStartIndex() - delta) : null;
+            if (old != null) {
+                final int lineDelta =
+                        start.getLine() - statements.get(old).tree().getStart().getLine();
+                for (final var statement : statements.subList(old, statements.size())) {
+                    shiftLines(statement.tree(), lineDelta);
+                    parsed.add(new Statement(statement.tree(), statement.start() + delta, statement.stop() + delta));
+                }
+                return parsed;
+            }
+
+            final var tree = (ParserRuleContext) LLVMFacade.parseStatement(parser, tokens, options.getParsingMode());
+            if (tree.getStop() == null || tree.getStop().getStopIndex() < start.getStartIndex()) {
+                throw new CompilationException(
+                        "Line " + start.getLine() + ", cannot parse statement at " + start.getText());
+            }
+            parsed.add(new Statement(tree, start.getStartIndex(), tree.getStop().getStopIndex()));
+        }
+        return parsed;
+    }
+
+    private int emit(int changed) throws IOException {
+        final int checkpoint = Math.min(changed, emitted) / CHECKPOINT_INTERVAL;
+        checkpoints.subList(checkpoint + 1, checkpoints.size()).clear();
+        actions.restore(checkpoints.get(checkpoint));
+        emitted = checkpoint * CHECKPOINT_INTERVAL;
+
+        final var walker = new ParseTreeWalker();
+        for (int i = emitted; i < statements.size(); i++) {
+            if (i % CHECKPOINT_INTERVAL == 0 && i / CHECKPOINT_INTERVAL == checkpoints.size()) {
+                checkpoints.add(actions.checkpoint());
+            }
+            walker.walk(actions, statements.get(i).tree());
+            emitted = i + 1;
+        }
+
+        try {
+            actions.exitProg(null);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return statements.size() - checkpoint * CHECKPOINT_INTERVAL;
+    }
+
+    private static int commonSuffix(int[] previous, int[] next, int prefix) {
+        final int limit = Math.min(previous.length, next.length) - prefix;
+        int length = 0;
+        while (length < limit && previous[previous.length - 1 - length] == next[next.length - 1 - length]) {
+            length++;
+        }
+        return length;
+    }
+
+    // Reused trees keep their tokens, so moving them to other lines has to fix up the line numbers for messages.
+    private static void shiftLines(ParseTree tree, int lineDelta) {
+        if (lineDelta == 0) {
+            return;
+        }
+
+        final var stack = new ArrayDeque<ParseTree>();
+        stack.push(tree);
+        while (!stack.isEmpty()) {
+            final var node = stack.pop();
+            if (node instanceof TerminalNode terminal && terminal.getSymbol() instanceof WritableToken token) {
+                token.setLine(token.getLine() + lineDelta);
+            }
+            for (int i = 0; i < node.getChildCount(); i++) {
+                stack.push(node.getChild(i));
+            }
+        }
+    }
+
+    // start and stop are code point offsets of the first and last character in the current source
+    private record Statement(ParserRuleContext tree, int start, int stop) {}
+}
@@ -1,86 +1,156 @@
 package org.example.llvm;
 
-import static java.lang.System.exit;
-import static org.example.llvm.LLVMGenerator.matrixRowIndex;
-
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.function.BiFunction;
 import java.util.logging.Logger;
 import main.java.org.example.ExprBaseListener;
+import main.java.org.example.ExprLexer;
 import main.java.org.example.ExprParser;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.tree.ParseTree;
+import org.example.ir.BitcodeWriter;
+import org.example.ir.DeadCodeElimination;
+import org.example.ir.IrModule;
+import org.example.ir.IrPrinter;
+import org.example.ir.PromoteLocals;
 import org.example.type.*;
 import org.example.util.ValidationParam;
 
 public class LLVMActions extends ExprBaseListener {
     private static final Logger logger = Logger.getLogger(LLVMActions.class.getName());
-    private static final Map<String, Type> types = Map.of(
-            "int", Type.INT,
-            "double", Type.DOUBLE,
-            "bool", Type.BOOL,
-            "string", Type.STRING,
-            "void", Type.VOID,
-            "var", Type.DYNAMIC);
-    private static final Map<String, BiFunction<Value, Value, Value>> llvmAction = Map.of(
-            "+", LLVMGenerator::add,
-            "-", LLVMGenerator::sub,
-            "*", LLVMGenerator::mult,
-            "/", LLVMGenerator::div,
-            "==", LLVMGenerator::xand,
-            "!=", LLVMGenerator::xor,
-            "&&", LLVMGenerator::and,
-            "||", LLVMGenerator::or);
+    private final Map<Operator, BiFunction<Value, Value, Value>> llvmAction;
     private final String outputFileName;
-    private final HashMap<String, Value> localVariables = new HashMap<>();
-    private final HashMap<String, Value> globalVariables = new HashMap<>();
+    private final LLVMGenerator generator;
+    private final CompileOptions options;
+    private final CompileMetrics metrics;
+    private final SymbolTable symbols = new SymbolTable();
     private final HashMap<String, Function> functions = new HashMap<>();
     private final Deque<Value> valueStack = new ArrayDeque<>();
     private final Deque<Function> functionStack = new ArrayDeque<>();
     private final Deque<Value> arrayValueStack = new ArrayDeque<>();
     private final Deque<Value> matrixValueStack = new ArrayDeque<>();
-    private final Deque<String> ifStack = new ArrayDeque<>();
-    private final Deque<String> loopStack = new ArrayDeque<>();
+    private final Deque<SymbolTable.Symbol> ifStack = new ArrayDeque<>();
     private final Deque<FunctionCall> functionCallStack = new ArrayDeque<>();
-    private final ShortCircuit shortCircuit;
-    private boolean isGlobalContext = true;
-    private boolean inFunction = false;
+    private final BooleanAnalysis booleans = new BooleanAnalysis();
+    private final Deque<LogicChain> logicStack = new ArrayDeque<>();
+    // outermost boolean node with a value known at compile time, nothing below it is emitted
+    private ParserRuleContext foldedBoolean;
+
+    public LLVMActions(String outputFileName, LLVMGenerator generator, CompileOptions options) {
+        this(outputFileName, generator, options, new CompileMetrics());
+    }
 
-    public LLVMActions(String outputFileName) {
+    LLVMActions(String outputFileName, LLVMGenerator generator, CompileOptions options, CompileMetrics metrics) {
         this.outputFileName = outputFileName;
-        this.shortCircuit = new ShortCircuit();
+        this.generator = generator;
+        this.options = options;
+        this.metrics = metrics;
+        this.llvmAction = new EnumMap<>(Map.of(
+                Operator.ADD, generator::add,
+                Operator.SUB, generator::sub,
+                Operator.MUL, generator::mult,
+                Operator.DIV, generator::div,
+                Operator.EQ, generator::xand,
+                Operator.NE, generator::xor));
     }
 
     @Override
     public void exitProg(ExprParser.ProgContext ctx) {
-        String finalLlvmCode = LLVMGenerator.generate();
         Path path = Paths.get(outputFileName);
-        try {
-            Files.write(path, finalLlvmCode.getBytes());
+        IrModule module = generator.finish();
+        if (options.isPromoteLocals()) {
+            try (var phase = metrics.phase("mem2reg")) {
+                new PromoteLocals().run(module);
+            }
+        }
+        if (options.isDeadCodeElimination()) {
+            try (var phase = metrics.phase("dce")) {
+                new DeadCodeElimination().run(module);
+            }
+        }
+        metrics.count(module);
+
+        if (LlvmToolchain.isNeeded(options)) {
+            try {
+                LlvmToolchain.run(module, path, options, metrics);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error occurred while running LLVM tools for: " + outputFileName, e);
+            }
+            return;
+        }
+
+        if (options.getOutputFormat() == OutputFormat.BC) {
+            try (var phase = metrics.phase("write");
+                    var channel = FileChannel.open(
+                            path,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.TRUNCATE_EXISTING,
+                            StandardOpenOption.WRITE)) {
+                new BitcodeWriter(channel).write(module);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error occurred during writing to file: " + outputFileName, e);
+            }
+            return;
+        }
+
+        try (var phase = metrics.phase("write");
+                Writer writer = Files.newBufferedWriter(path)) {
+            new IrPrinter(writer).print(module);
         } catch (IOException e) {
-            logger.severe("Error occurred during writing to file: " + e.getMessage());
+            throw new UncheckedIOException("Error occurred during writing to file: " + outputFileName, e);
         }
     }
 
+    // Snapshot of everything that carries over from one top-level expr to the next, for incremental compilation.
+    Checkpoint checkpoint() {
+        return new Checkpoint(
+                generator.checkpoint(), symbols.snapshot(), new HashMap<>(functions), new ArrayDeque<>(valueStack));
+    }
+
+    void restore(Checkpoint checkpoint) {
+        generator.restore(checkpoint.generator());
+        symbols.restore(checkpoint.symbols());
+        functions.clear();
+        functions.putAll(checkpoint.functions());
+        valueStack.clear();
+        valueStack.addAll(checkpoint.valueStack());
+        functionStack.clear();
+        arrayValueStack.clear();
+        matrixValueStack.clear();
+        ifStack.clear();
+        functionCallStack.clear();
+        logicStack.clear();
+        foldedBoolean = null;
+    }
+
+    record Checkpoint(
+            LLVMGenerator.Checkpoint generator,
+            SymbolTable.Snapshot symbols,
+            Map<String, Function> functions,
+            Deque<Value> valueStack) {}
+
     @Override
     public void exitVarDeclaration(ExprParser.VarDeclarationContext ctx) {
         ParseTree root = ctx.getChild(0);
         Type type = getVariableType(root);
-        String id = root.getChild(1).getText();
+        String name = root.getChild(1).getText();
+        int id = symbols.intern(name);
 
         if (type == null) {
-            logger.severe("Line " + ctx.getStart().getLine() + ", unknown type");
-            exit(1);
-            return;
+            throw new CompilationException("Line " + ctx.getStart().getLine() + ", unknown type");
         }
 
-        if (variableIsAlreadyDeclared(id)) {
-            logger.warning("Line " + ctx.getStart().getLine() + ", variable already declared: " + id);
+        if (symbols.isDeclaredInScope(id)) {
+            logger.warning("Line " + ctx.getStart().getLine() + ", variable already declared: " + name);
             return;
         }
 
@@ -88,40 +158,38 @@ public class LLVMActions extends ExprBaseListener {
             type = valueStack.peek().getType();
         }
 
-        LLVMGenerator.declare(id, type, isGlobalContext);
-        Value value = new Value(id, type, isGlobalContext);
-        addVariableToDeclared(id, value);
+        // a local shadowing one of the same name still needs its own stack slot
+        boolean isGlobal = isGlobalContext();
+        String storageName = isGlobal ? name : symbols.storageName(name);
+        generator.declare(storageName, type, isGlobal);
+        Value storage = new Value(storageName, type, isGlobal);
+        symbols.put(id, new SymbolTable.Symbol(storage, storage));
 
         // declaration with assignment
         if (root.getChildCount() > 2) {
-            value = valueStack.pop();
-            LLVMGenerator.assign(id, value, isGlobalContext);
-            addVariableToDeclared(id, value);
+            Value value = valueStack.pop();
+            generator.assign(storageName, value, isGlobal);
+            symbols.put(id, new SymbolTable.Symbol(value, storage));
         }
     }
 
     @Override
     public void exitPrint(ExprParser.PrintContext ctx) {
-        String id = ctx.ID().getText();
-        Value value = getVariable(id, ctx);
-        Type type = value.getType();
-
-        if (type == Type.STRING) {
-            value = LLVMGenerator.load(id, value, isGlobalContext);
-        }
-        LLVMGenerator.printf(value);
+        SymbolTable.Symbol symbol = symbol(ctx.identifier().getText(), ctx);
+        Value value = symbol.value().getType() == Type.STRING ? reload(symbol) : value(symbol);
+        generator.printf(value);
     }
 
     @Override
     public void exitRead(ExprParser.ReadContext ctx) {
-        String id = ctx.ID().getText();
-        Value value = getVariable(id, ctx);
-        LLVMGenerator.scanf(value);
+        // read replaces what the variable holds, so it writes the storage and never the value, e.g. a pooled literal
+        SymbolTable.Symbol symbol = symbol(ctx.identifier().getText(), ctx);
+        generator.scanf(symbol.storage() != null ? symbol.storage() : symbol.value());
     }
 
     @Override
     public void exitMultiplicativeExpression(ExprParser.MultiplicativeExpressionContext ctx) {
-        if (shortCircuit.isShortCircuit()) {
+        if (foldedBoolean != null) {
             return;
         }
 
@@ -130,7 +198,7 @@ public class LLVMActions extends ExprBaseListener {
 
     @Override
     public void exitAdditiveExpression(ExprParser.AdditiveExpressionContext ctx) {
-        if (shortCircuit.isShortCircuit()) {
+        if (foldedBoolean != null) {
             return;
         }
         doArithmetics(ctx);
@@ -140,21 +208,14 @@ public class LLVMActions extends ExprBaseListener {
     public void exitIntAssignement(ExprParser.IntAssignementContext ctx) {
         // arithmetics are handled in exitAdditiveExpression
         if (ctx.INT_VALUE() != null) {
-            Value value = new Constant(ctx.INT_VALUE().getText(), Type.INT, isGlobalContext);
+            Value value = new Constant(ctx.INT_VALUE().getText(), Type.INT, isGlobalContext());
             valueStack.addLast(value);
         } else if (ctx.arrayValueByIndex() != null) {
-            String arrayId = ctx.arrayValueByIndex().ID().getText();
-            String index = ctx.arrayValueByIndex().arrayIndex().INT_VALUE().getText();
-            Array array = (Array) localVariables.get(arrayId);
-            String newValueName = LLVMGenerator.loadValueByIndex(array, index);
-            valueStack.addLast(new Value(newValueName, Type.INT));
+            valueStack.addLast(arrayElement(ctx.arrayValueByIndex(), intElementType(ctx)));
         } else if (ctx.matrixValueByIndex() != null) {
-            String matrixId = ctx.matrixValueByIndex().ID().getText();
-            String rowIndex = ctx.matrixValueByIndex().INT_VALUE(0).getText();
-            String columnIndex = ctx.matrixValueByIndex().INT_VALUE(1).getText();
-            Matrix matrix = (Matrix) localVariables.get(matrixId);
-            String newValueName = LLVMGenerator.loadValueByIndex(matrix, rowIndex, columnIndex);
-            valueStack.addLast(new Value(newValueName, Type.INT));
+            valueStack.addLast(matrixElement(ctx.matrixValueByIndex(), intElementType(ctx)));
+        } else if (ctx.arrayReduction() != null) {
+            valueStack.addLast(arrayReduction(ctx.arrayReduction(), Type.INT));
         }
     }
 
@@ -162,8 +223,14 @@ public class LLVMActions extends ExprBaseListener {
     public void exitFloatAssignement(ExprParser.FloatAssignementContext ctx) {
         // arithmetics are handled in exitAdditiveExpression
         if (ctx.FLOAT_VALUE() != null) {
-            Value value = new Constant(ctx.FLOAT_VALUE().getText(), Type.DOUBLE, isGlobalContext);
+            Value value = new Constant(ctx.FLOAT_VALUE().getText(), Type.DOUBLE, isGlobalContext());
             valueStack.addLast(value);
+        } else if (ctx.arrayValueByIndex() != null) {
+            valueStack.addLast(arrayElement(ctx.arrayValueByIndex(), Type.DOUBLE));
+        } else if (ctx.matrixValueByIndex() != null) {
+            valueStack.addLast(matrixElement(ctx.matrixValueByIndex(), Type.DOUBLE));
+        } else if (ctx.arrayReduction() != null) {
+            valueStack.addLast(arrayReduction(ctx.arrayReduction(), Type.DOUBLE));
         }
     }
 
@@ -171,7 +238,7 @@ public class LLVMActions extends ExprBaseListener {
     public void exitBoolAssignement(ExprParser.BoolAssignementContext ctx) {
         // arithmetics are handled in exitAdditiveExpression
         if (ctx.BOOL_VALUE() != null) {
-            Value value = new Constant(ctx.BOOL_VALUE().getText(), Type.BOOL, isGlobalContext);
+            Value value = new Constant(ctx.BOOL_VALUE().getText(), Type.BOOL, isGlobalContext());
             valueStack.addLast(value);
         }
     }
@@ -179,41 +246,56 @@ public class LLVMActions extends ExprBaseListener {
     @Override
     public void exitStringAssignement(ExprParser.StringAssignementContext ctx) {
         if (ctx.STRING_VALUE() != null) {
-            String text = ctx.STRING_VALUE().getText();
-            String textWithoutQuotes = text.substring(1, text.length() - 1);
-            String id = LLVMGenerator.constantString(textWithoutQuotes);
-            // must be local
-            Value value = new Value(id, Type.STRING);
-            valueStack.addLast(value);
+            valueStack.addLast(
+                    generator.constantString(Lexeme.of(ctx.STRING_VALUE()).getContent()));
         }
     }
 
     @Override
     public void enterArrayDeclaration(ExprParser.ArrayDeclarationContext ctx) {
-        Array array = new Array(ctx.ID().getText(), Type.INT, false);
+        Array array = new Array(
+                symbols.storageName(ctx.identifier().getText()), ctx.FLOAT() != null ? Type.DOUBLE : Type.INT, false);
+        if (ctx.arrayMalloc() != null) {
+            final long length = Lexeme.of(ctx.arrayMalloc().INT_VALUE()).getValue();
+            if (length > Integer.MAX_VALUE) {
+                throw new CompilationException("Line " + ctx.getStart().getLine() + ", array too long: "
+                        + ctx.arrayMalloc().INT_VALUE().getText());
+            }
+            array.allocatedLength = (int) length;
+        }
         arrayValueStack.addLast(array);
     }
 
     @Override
     public void enterMatrixDeclaration(ExprParser.MatrixDeclarationContext ctx) {
-        Matrix matrix = new Matrix(ctx.ID().getText(), Type.INT, false);
+        Matrix matrix = new Matrix(
+                symbols.storageName(ctx.identifier().getText()), ctx.FLOAT() != null ? Type.DOUBLE : Type.INT, false);
         matrixValueStack.addLast(matrix);
     }
 
     @Override
     public void exitMatrixDeclaration(ExprParser.MatrixDeclarationContext ctx) {
         Matrix matrix = (Matrix) matrixValueStack.pop();
-        matrixValueStack.addLast(matrix);
-        localVariables.put(ctx.ID().getText(), matrix);
-        LLVMGenerator.declareMatrix(matrix);
-        LLVMGenerator.assignMatrix(matrix);
+        if (ctx.matrixProduct() != null) {
+            matrixProduct(matrix, ctx.matrixProduct());
+            declareValue(ctx.identifier().getText(), matrix);
+            return;
+        }
+
+        if (matrix.rows.stream().anyMatch(row -> row.length() != matrix.columns())) {
+            throw new CompilationException("Line " + ctx.getStart().getLine() + ", all rows of matrix "
+                    + ctx.identifier().getText() + " must have the same length");
+        }
+        declareValue(ctx.identifier().getText(), matrix);
+        generator.declareMatrix(matrix);
+        generator.assignMatrix(matrix);
     }
 
     @Override
     public void enterMatrixRow(ExprParser.MatrixRowContext ctx) {
-        Array array = new Array("mat" + matrixRowIndex, Type.INT, false);
-        arrayValueStack.push(array);
-        matrixRowIndex++;
+        // rows are only value holders, the matrix is allocated as one block
+        Matrix matrix = (Matrix) matrixValueStack.peek();
+        arrayValueStack.push(new Array(matrix.getName(), matrix.getType(), false));
     }
 
     @Override
@@ -226,33 +308,46 @@ public class LLVMActions extends ExprBaseListener {
     @Override
     public void exitArrayDeclaration(ExprParser.ArrayDeclarationContext ctx) {
         Array array = (Array) arrayValueStack.pop();
-        arrayValueStack.addLast(array);
-        localVariables.put(ctx.ID().getText(), array);
-        LLVMGenerator.declareArray(array);
-        LLVMGenerator.assignArray(array);
+        if (ctx.arrayOperation() != null) {
+            arrayOperation(array, ctx.arrayOperation());
+            declareValue(ctx.identifier().getText(), array);
+            return;
+        }
+
+        declareValue(ctx.identifier().getText(), array);
+        generator.declareArray(array);
+        generator.assignArray(array);
     }
 
     @Override
     public void exitArrayValues(ExprParser.ArrayValuesContext ctx) {
         Array array = (Array) arrayValueStack.peek();
-        array.values.add(new Constant(ctx.INT_VALUE().getText(), Type.INT));
+        final Value value;
+        if (ctx.INT_VALUE() != null) {
+            value = new Constant(ctx.INT_VALUE().getText(), Type.INT);
+        } else if (ctx.FLOAT_VALUE() != null) {
+            value = new Constant(ctx.FLOAT_VALUE().getText(), Type.DOUBLE);
+        } else {
+            value = valueStack.removeLast();
+        }
+
+        array.values.add(element(value, array.getType(), ctx));
     }
 
     @Override
     public void exitUnaryExpression(ExprParser.UnaryExpressionContext ctx) {
-        if (shortCircuit.isShortCircuit()) {
+        if (foldedBoolean != null) {
             return;
         }
 
         if (ctx.BOOL_VALUE() != null) {
-            boolean eval = evaluateUnaryExpression(ctx);
-            Constant value = new Constant(Boolean.toString(eval), Type.BOOL, isGlobalContext);
+            Constant value = new Constant(booleans.valueOf(ctx).toString(), Type.BOOL, isGlobalContext());
             valueStack.addLast(value);
         } else {
             boolean shouldNegate = shouldNegate(ctx);
-            Value value = getVariable(ctx.ID().getText(), ctx);
+            Value value = getVariable(ctx.identifier().getText(), ctx);
             if (shouldNegate) {
-                value = LLVMGenerator.neg(value);
+                value = generator.neg(value);
             }
 
             valueStack.addLast(value);
@@ -261,83 +356,119 @@ public class LLVMActions extends ExprBaseListener {
 
     @Override
     public void enterBooleanExpression(ExprParser.BooleanExpressionContext ctx) {
-        shortCircuit.setShortCircuit(false);
-    }
-
-    @Override
-    public void exitBooleanExpression(ExprParser.BooleanExpressionContext ctx) {
-        shortCircuit.setShortCircuit(false);
+        booleans.analyze(ctx);
     }
 
     @Override
     public void enterBooleanDisjunctionExpression(ExprParser.BooleanDisjunctionExpressionContext ctx) {
-        shortCircuit.setShortCircuit(checkShortCircuit(ctx, true));
-        shortCircuit.setResult(true);
+        if (!enterFolded(ctx) && ctx.getChildCount() > 1) {
+            logicStack.push(new LogicChain(ctx, generator.logicStart(Operator.OR)));
+        }
     }
 
     @Override
     public void exitExpressionFactor(ExprParser.ExpressionFactorContext ctx) {
-        if (shortCircuit.isShortCircuit()) {
+        if (foldedBoolean != null) {
             return;
         }
 
-        if (ctx.ID() != null) {
-            String id = ctx.ID().getText();
+        if (ctx.identifier() != null) {
+            String id = ctx.identifier().getText();
             Value value = getVariable(id, ctx);
             valueStack.addLast(value);
         } else if (ctx.FLOAT_VALUE() != null) {
             String id = ctx.FLOAT_VALUE().getText();
-            valueStack.addLast(new Constant(id, Type.DOUBLE, isGlobalContext));
+            valueStack.addLast(new Constant(id, Type.DOUBLE, isGlobalContext()));
         } else if (ctx.INT_VALUE() != null) {
             String id = ctx.INT_VALUE().getText();
-            valueStack.addLast(new Constant(id, Type.INT, isGlobalContext));
+            valueStack.addLast(new Constant(id, Type.INT, isGlobalContext()));
         }
     }
 
     @Override
     public void exitBooleanDisjunctionExpression(ExprParser.BooleanDisjunctionExpressionContext ctx) {
-        if (shortCircuit.isShortCircuit()) {
-            Constant constant = new Constant(Boolean.toString(shortCircuit.getResult()), Type.BOOL, isGlobalContext);
-            valueStack.push(constant);
-            return;
+        if (!exitFolded(ctx)) {
+            endLogic(ctx);
         }
+    }
 
-        doArithmetics(ctx);
+    @Override
+    public void enterBooleanEqualityExpression(ExprParser.BooleanEqualityExpressionContext ctx) {
+        enterFolded(ctx);
     }
 
     @Override
     public void exitBooleanEqualityExpression(ExprParser.BooleanEqualityExpressionContext ctx) {
-        if (shortCircuit.isShortCircuit()) {
-            return;
+        if (!exitFolded(ctx)) {
+            doArithmetics(ctx);
         }
-
-        doArithmetics(ctx);
+        nextLogicOperand(ctx);
     }
 
     @Override
     public void enterBooleanConjunctionExpression(ExprParser.BooleanConjunctionExpressionContext ctx) {
-        if (shortCircuit.isShortCircuit() || wasPreviouslyChecked(ctx)) {
-            return;
+        if (!enterFolded(ctx) && ctx.getChildCount() > 1) {
+            logicStack.push(new LogicChain(ctx, generator.logicStart(Operator.AND)));
         }
-
-        shortCircuit.setShortCircuit(checkShortCircuit(ctx, false));
-        shortCircuit.setResult(false);
     }
 
     @Override
     public void exitBooleanConjunctionExpression(ExprParser.BooleanConjunctionExpressionContext ctx) {
-        if (shortCircuit.isShortCircuit()) {
+        if (!exitFolded(ctx)) {
+            endLogic(ctx);
+        }
+        nextLogicOperand(ctx);
+    }
+
+    // True from a node with a known value down to its leaves; that node alone pushes the constant on exit.
+    private boolean enterFolded(ParserRuleContext ctx) {
+        if (foldedBoolean == null && booleans.valueOf(ctx) != null) {
+            foldedBoolean = ctx;
+        }
+        return foldedBoolean != null;
+    }
+
+    private boolean exitFolded(ParserRuleContext ctx) {
+        if (foldedBoolean == ctx) {
+            valueStack.addLast(new Constant(booleans.valueOf(ctx).toString(), Type.BOOL, isGlobalContext()));
+            foldedBoolean = null;
+            return true;
+        }
+        return foldedBoolean != null;
+    }
+
+    // Every operand of && or || but the last may decide the result, the conditional branch follows its code.
+    private void nextLogicOperand(ParserRuleContext ctx) {
+        final var chain = logicStack.peek();
+        final var parent = ctx.getParent();
+        if (chain == null || chain.node() != parent || parent.getChild(parent.getChildCount() - 1) == ctx) {
             return;
         }
+        generator.logicOperand(chain.logic(), logicOperand(ctx));
+    }
 
-        doArithmetics(ctx);
+    private void endLogic(ParserRuleContext ctx) {
+        if (ctx.getChildCount() > 1) {
+            final var chain = logicStack.pop();
+            valueStack.addLast(generator.logicEnd(chain.logic(), logicOperand(ctx)));
+        }
     }
 
+    private Value logicOperand(ParserRuleContext ctx) {
+        final var value = valueStack.removeLast();
+        if (value.getType() != Type.BOOL) {
+            throw new CompilationException(
+                    "Line " + ctx.getStart().getLine() + ", && and || need bool operands, got " + value.getType());
+        }
+        return value;
+    }
+
+    private record LogicChain(ParserRuleContext node, LLVMGenerator.Logic logic) {}
+
     @Override
     public void enterFunction(ExprParser.FunctionContext ctx) {
         if (functions.containsKey(ctx.ID().getText())) {
-            logger.severe("Function " + ctx.ID().getText() + " already declared");
-            exit(1);
+            throw new CompilationException("Function " + ctx.ID().getText() + " already declared");
         }
 
         final var function = Function.builder()
@@ -347,38 +478,36 @@ public class LLVMActions extends ExprBaseListener {
 
         functions.put(ctx.ID().getText(), function);
         functionStack.addLast(function);
-
-        isGlobalContext = false;
-        inFunction = true;
+        symbols.enterFunction();
     }
 
     @Override
     public void exitFunction(ExprParser.FunctionContext ctx) {
         functionStack.removeLast();
-        isGlobalContext = true;
-        inFunction = false;
+        symbols.exitFunction();
     }
 
     @Override
     public void exitArgsDeclaration(ExprParser.ArgsDeclarationContext ctx) {
         final var type = getVariableType(ctx);
-        final var id = ctx.ID().getText();
+        final var id = ctx.identifier().getText();
         final var function = functionStack.getLast();
         final var parameter = Parameter.builder().name(id).type(type).build();
         function.addParameter(parameter);
-        addVariableToDeclared(id, parameter);
+        symbols.reserveStorage(id);
+        declareValue(id, parameter);
     }
 
     @Override
     public void enterFunctionBlock(ExprParser.FunctionBlockContext ctx) {
         final var function = functionStack.getLast();
-        LLVMGenerator.defineFunction(function);
+        generator.defineFunction(function);
     }
 
     @Override
     public void exitFunctionBlock(ExprParser.FunctionBlockContext ctx) {
         final var function = functionStack.getLast();
-        LLVMGenerator.closeFunction(function);
+        generator.closeFunction(function);
     }
 
     @Override
@@ -386,8 +515,7 @@ public class LLVMActions extends ExprBaseListener {
         final var functionName = ctx.ID().getText();
         final var function = functions.get(functionName);
         if (function == null) {
-            logger.severe("Function " + functionName + " not found");
-            exit(1);
+            throw new CompilationException("Function " + functionName + " not found");
         }
 
         final var functionCall = new FunctionCall(function, new ArrayList<>());
@@ -397,7 +525,7 @@ public class LLVMActions extends ExprBaseListener {
     @Override
     public void exitFunctionCall(ExprParser.FunctionCallContext ctx) {
         final var functionCall = functionCallStack.removeLast();
-        final var value = LLVMGenerator.callFunction(functionCall.function(), functionCall.arguments());
+        final var value = generator.callFunction(functionCall.function(), functionCall.arguments());
         if (value != null) {
             valueStack.addLast(value);
         }
@@ -407,10 +535,14 @@ public class LLVMActions extends ExprBaseListener {
     public void exitArgs(ExprParser.ArgsContext ctx) {
         final var functionCall = functionCallStack.peekLast();
         Type type = getArgumentType(ctx);
-        final var id = ctx.ID();
+        final var id = ctx.identifier();
         if (id != null) {
             final var value = getVariable(id.getText(), ctx);
             functionCall.arguments().add(value);
+        } else if (ctx.STRING_VALUE() != null) {
+            functionCall
+                    .arguments()
+                    .add(generator.constantString(Lexeme.of(ctx.STRING_VALUE()).getContent()));
         } else {
             final var value = new Constant(getVariableValue(ctx), type, false);
             functionCall.arguments().add(value);
@@ -419,52 +551,86 @@ public class LLVMActions extends ExprBaseListener {
 
     @Override
     public void enterLoop(ExprParser.LoopContext ctx) {
-        final var id = ctx.ID().getText();
-        final var value = getVariable(id, ctx);
+        final var id = ctx.identifier().getText();
+        final var symbol = symbol(id, ctx);
         final var line = ctx.getStart().getLine();
         final var validations = Arrays.asList(
                 new ValidationParam(() -> variableNotDeclared(id), line, "variable doesn't exist: " + id),
-                new ValidationParam(() -> value.getType() != Type.INT, line, "variable isn't int: " + id));
+                new ValidationParam(() -> symbol.value().getType() != Type.INT, line, "variable isn't int: " + id));
+        symbols.push();
         if (isNotValid(validations)) {
             return;
         }
-        final var loadedValue = LLVMGenerator.load(id, value, value.isGlobal());
-        isGlobalContext = false;
-        loopStack.push(loadedValue.getName());
-        LLVMGenerator.loopStart(loadedValue);
+        generator.loopStart(new Constant("0", Type.INT), loopBound(symbol));
     }
 
     @Override
     public void exitLoop(ExprParser.LoopContext ctx) {
-        LLVMGenerator.loopEnd();
-        loopStack.pop();
-        if (loopStack.isEmpty() && !inFunction) {
-            this.isGlobalContext = true;
+        generator.loopEnd();
+        symbols.pop();
+    }
+
+    @Override
+    public void enterForLoop(ExprParser.ForLoopContext ctx) {
+        final var start = forBound(ctx.forBound(0));
+        final var end = forBound(ctx.forBound(1));
+        // the counter lives in the loop's scope and shadows a variable of the same name until the loop ends
+        symbols.push();
+        declareValue(ctx.identifier().getText(), generator.loopStart(start, end));
+    }
+
+    @Override
+    public void exitForLoop(ExprParser.ForLoopContext ctx) {
+        generator.loopEnd();
+        symbols.pop();
+    }
+
+    private Value forBound(ExprParser.ForBoundContext ctx) {
+        if (ctx.INT_VALUE() != null) {
+            return new Constant(ctx.INT_VALUE().getText(), Type.INT);
         }
+
+        final var id = ctx.identifier().getText();
+        final var symbol = symbol(id, ctx);
+        if (symbol.value().getType() != Type.INT) {
+            throw new CompilationException("Line " + ctx.getStart().getLine() + ", variable isn't int: " + id);
+        }
+        return loopBound(symbol);
+    }
+
+    // Variables are loaded again, read() may have changed them; parameters and loop counters are registers.
+    private Value loopBound(SymbolTable.Symbol symbol) {
+        return reload(symbol);
     }
 
     @Override
     public void enterIfStatement(ExprParser.IfStatementContext ctx) {
-        final var conditionId = ctx.ID().getText();
-        final var value = getVariable(conditionId, ctx);
+        final var conditionId = ctx.identifier().getText();
+        final var symbol = symbol(conditionId, ctx);
         final var line = ctx.getStart().getLine();
         final var validations = Arrays.asList(
                 new ValidationParam(
                         () -> variableNotDeclared(conditionId), line, "variable doesn't exist: " + conditionId),
-                new ValidationParam(() -> value.getType() != Type.BOOL, line, "variable isn't bool: " + conditionId));
+                new ValidationParam(
+                        () -> symbol.value().getType() != Type.BOOL, line, "variable isn't bool: " + conditionId));
         if (isNotValid(validations)) {
             return;
         }
-        ifStack.push(conditionId);
-        this.isGlobalContext = false;
-        final var loadedValue = LLVMGenerator.load(conditionId, value, value.isGlobal());
-        LLVMGenerator.ifStart();
-        LLVMGenerator.evaluateIfCondition(loadedValue);
+        ifStack.push(symbol);
+        final var loadedValue = condition(symbol);
+        generator.ifStart();
+        generator.evaluateIfCondition(loadedValue);
+    }
+
+    @Override
+    public void enterIfBlock(ExprParser.IfBlockContext ctx) {
+        symbols.push();
     }
 
     @Override
     public void exitIfBlock(ExprParser.IfBlockContext ctx) {
-        LLVMGenerator.ifEnd();
+        symbols.pop();
+        generator.ifEnd();
     }
 
     @Override
@@ -473,23 +639,20 @@ public class LLVMActions extends ExprBaseListener {
         if (ifWithoutElse) {
             ifStack.pop();
         }
-        if (ifStack.isEmpty() && !inFunction) {
-            this.isGlobalContext = true;
-        }
     }
 
     @Override
     public void enterElseStatement(ExprParser.ElseStatementContext ctx) {
-        final var conditionId = ifStack.pop();
-        final var value = getVariable(conditionId, ctx);
-        final var loadedValue = LLVMGenerator.load(conditionId, value, value.isGlobal());
-        LLVMGenerator.elseStart();
-        LLVMGenerator.evaluateElseCondition(loadedValue);
+        final var loadedValue = condition(ifStack.pop());
+        generator.elseStart();
+        generator.evaluateElseCondition(loadedValue);
+        symbols.push();
     }
 
     @Override
     public void exitElseStatement(ExprParser.ElseStatementContext ctx) {
-        LLVMGenerator.elseEnd();
+        symbols.pop();
+        generator.elseEnd();
     }
 
     @Override
@@ -501,9 +664,10 @@ public class LLVMActions extends ExprBaseListener {
         } else if (ctx.BOOL_VALUE() != null) {
             valueStack.addLast(new Constant(ctx.BOOL_VALUE().getText(), Type.INT));
         } else if (ctx.STRING_VALUE() != null) {
-            valueStack.addLast(new Constant(ctx.STRING_VALUE().getText(), Type.STRING));
-        } else if (ctx.ID() != null) {
-            String id = ctx.ID().getText();
+            valueStack.addLast(
+                    generator.constantString(Lexeme.of(ctx.STRING_VALUE()).getContent()));
+        } else if (ctx.identifier() != null) {
+            String id = ctx.identifier().getText();
             Value value = getVariable(id, ctx);
             valueStack.addLast(value);
         }
@@ -512,7 +676,7 @@ public class LLVMActions extends ExprBaseListener {
     @Override
     public void exitReturnStmt(ExprParser.ReturnStmtContext ctx) {
         final var value = valueStack.removeLast();
-        LLVMGenerator.ret(value);
+        generator.ret(value);
     }
 
     private void doArithmetics(ParserRuleContext ctx) {
@@ -528,94 +692,214 @@ public class LLVMActions extends ExprBaseListener {
             Value value = values.get(i);
 
             if (value.getType() != newValue.getType()) {
-                logger.severe("Value type mismatch: " + value.getType() + " != " + newValue.getType());
-                exit(1);
+                throw new CompilationException("Value type mismatch: " + value.getType() + " != " + newValue.getType());
+            }
+            final var operator = Lexeme.of(ctx.getChild(2 * i - 1)).getOperator();
+            final var folded = options.isConstantFolding()
+                    ? ConstantFolder.fold(operator, newValue, value, isGlobalContext())
+                    : Optional.<Value>empty();
+            if (folded.isPresent()) {
+                newValue = folded.get();
+                continue;
             }
-            final var arithmeticStrategy =
-                    llvmAction.get(ctx.getChild(2 * i - 1).getText());
+
+            final var arithmeticStrategy = llvmAction.get(operator);
             newValue = arithmeticStrategy.apply(newValue, value);
         }
 
         valueStack.addLast(newValue);
     }
 
-    private Type getVariableType(ParseTree ctx) {
-        String typeName = ctx.getChild(0).getText();
-        return types.get(typeName);
+    private void arrayOperation(Array result, ExprParser.ArrayOperationContext ctx) {
+        final var left = arrayOperand(ctx.arrayOperand(0), result.getType());
+        final var right = arrayOperand(ctx.arrayOperand(1), result.getType());
+        final var line = ctx.getStart().getLine();
+        if (!(left instanceof Array) && !(right instanceof Array)) {
+            throw new CompilationException("Line " + line + ", array operation needs an array operand");
+        }
+        if (left instanceof Array first && right instanceof Array second && first.length() != second.length()) {
+            throw new CompilationException(
+                    "Line " + line + ", array lengths differ: " + first.length() + " != " + second.length());
+        }
+
+        result.allocatedLength = ((Array) (left instanceof Array ? left : right)).length();
+        generator.arrayOperation(
+                result, left, right, llvmAction.get(Lexeme.of(ctx.getChild(2)).getOperator()));
     }
 
-    private String getVariableValue(ParseTree ctx) {
-        return Optional.ofNullable(ctx)
-                .map(ParseTree::getText)
-                .map(text -> text.replace("=", ""))
-                .orElse(null);
+    private Value arrayOperand(ExprParser.ArrayOperandContext ctx, Type elementType) {
+        if (ctx.INT_VALUE() != null) {
+            return element(new Constant(ctx.INT_VALUE().getText(), Type.INT), elementType, ctx);
+        } else if (ctx.FLOAT_VALUE() != null) {
+            return element(new Constant(ctx.FLOAT_VALUE().getText(), Type.DOUBLE), elementType, ctx);
+        }
+
+        final var value = getVariable(ctx.identifier().getText(), ctx);
+        if (value instanceof Array array) {
+            return array(ctx.identifier().getText(), array, elementType, ctx);
+        } else if (value instanceof Matrix) {
+            throw new CompilationException("Line " + ctx.getStart().getLine() + ", "
+                    + ctx.identifier().getText() + " is a matrix, not an array");
+        }
+        return element(value, elementType, ctx);
     }
 
-    private boolean evaluateUnaryExpression(ExprParser.UnaryExpressionContext ctx) {
-        if (ctx.BOOL_VALUE() == null) {
-            return false;
+    private Value arrayReduction(ExprParser.ArrayReductionContext ctx, Type type) {
+        final var left =
+                array(ctx.identifier(0).getText(), getVariable(ctx.identifier(0).getText(), ctx), type, ctx);
+        if (ctx.SUM() != null) {
+            return generator.sum(left);
         }
 
-        int negCount = ctx.getChildCount() - 1;
-        boolean value = ctx.BOOL_VALUE().getText().equals("true");
-        return (negCount % 2 == 0) == value;
+        final var right =
+                array(ctx.identifier(1).getText(), getVariable(ctx.identifier(1).getText(), ctx), type, ctx);
+        if (left.length() != right.length()) {
+            throw new CompilationException("Line " + ctx.getStart().getLine() + ", array lengths differ: "
+                    + left.length() + " != " + right.length());
+        }
+        return generator.dot(left, right);
     }
 
-    private boolean shouldNegate(ExprParser.UnaryExpressionContext ctx) {
-        int negCount = ctx.getChildCount() - 1;
-        return negCount % 2 == 1;
+    private void matrixProduct(Matrix result, ExprParser.MatrixProductContext ctx) {
+        final var line = ctx.getStart().getLine();
+        if (Lexeme.of(ctx.MULTIPLICATIVE_OPERATOR()).getOperator() != Operator.MUL) {
+            throw new CompilationException("Line " + line + ", matrices can only be multiplied");
+        }
+
+        final var left = matrix(ctx.identifier(0).getText(), result.getType(), ctx);
+        final var right = matrix(ctx.identifier(1).getText(), result.getType(), ctx);
+        if (left.columns() != right.rows.size()) {
+            throw new CompilationException("Line " + line + ", cannot multiply " + left.rows.size() + "x"
+                    + left.columns() + " matrix by " + right.rows.size() + "x" + right.columns() + " matrix");
+        }
+        for (int i = 0; i < left.rows.size(); i++) {
+            final var row = new Array(ctx.identifier(0).getText(), result.getType(), false);
+            row.allocatedLength = right.columns();
+            result.rows.add(row);
+        }
+        generator.matrixProduct(result, left, right);
     }
 
-    private boolean checkShortCircuit(ParserRuleContext ctx, boolean lookFor) {
-        Stack<ParseTree> stack = new Stack<>();
-        stack.addAll(ctx.children);
+    private Array array(String id, Value value, Type elementType, ParserRuleContext ctx) {
+        if (!(value instanceof Array array)) {
+            throw new CompilationException("Line " + ctx.getStart().getLine() + ", " + id + " is not an array");
+        }
+        if (array.getType() != elementType) {
+            throw new CompilationException("Line " + ctx.getStart().getLine() + ", " + id + " has " + array.getType()
+                    + " elements, expected " + elementType);
+        }
+        return array;
+    }
 
-        while (!stack.isEmpty()) {
-            ParseTree child = stack.removeFirst();
-            if (child.getChildCount() == 1) {
-                stack.push(child.getChild(0));
-            }
+    // var takes the type of the element it is initialized with, int has to match it
+    private static Type intElementType(ExprParser.IntAssignementContext ctx) {
+        return ctx.getParent() instanceof ExprParser.DynamicVarAssignementContext ? null : Type.INT;
+    }
 
-            if (child instanceof ExprParser.UnaryExpressionContext c) {
-                if (evaluateUnaryExpression(c) == lookFor) {
-                    return true;
-                }
-            }
+    // elementType null accepts either element type
+    private Value arrayElement(ExprParser.ArrayValueByIndexContext ctx, Type elementType) {
+        final var id = ctx.identifier().getText();
+        final var value = getVariable(id, ctx);
+        final var array = array(id, value, elementType != null ? elementType : value.getType(), ctx);
+        return generator.loadValueByIndex(array, ctx.arrayIndex().INT_VALUE().getText());
+    }
+
+    private Value matrixElement(ExprParser.MatrixValueByIndexContext ctx, Type elementType) {
+        final var id = ctx.identifier().getText();
+        final var matrix = matrix(
+                id, elementType != null ? elementType : getVariable(id, ctx).getType(), ctx);
+        return generator.loadValueByIndex(
+                matrix, ctx.INT_VALUE(0).getText(), ctx.INT_VALUE(1).getText());
+    }
+
+    private Matrix matrix(String id, Type elementType, ParserRuleContext ctx) {
+        if (!(getVariable(id, ctx) instanceof Matrix matrix)) {
+            throw new CompilationException("Line " + ctx.getStart().getLine() + ", " + id + " is not a matrix");
+        }
+        if (matrix.getType() != elementType) {
+            throw new CompilationException("Line " + ctx.getStart().getLine() + ", " + id + " has " + matrix.getType()
+                    + " elements, expected " + elementType);
         }
+        return matrix;
+    }
 
-        return false;
+    // Integer literals widen to double elements, anything else must already have the element type.
+    private static Value element(Value value, Type elementType, ParserRuleContext ctx) {
+        if (value.getType() == elementType) {
+            return value;
+        } else if (value instanceof Constant && value.getType() == Type.INT && elementType == Type.DOUBLE) {
+            return new Constant(value.getName() + ".0", Type.DOUBLE);
+        }
+        throw new CompilationException("Line " + ctx.getStart().getLine() + ", cannot use " + value.getType()
+                + " value as " + elementType + " array element");
     }
 
-    private boolean wasPreviouslyChecked(ExprParser.BooleanConjunctionExpressionContext ctx) {
-        return ctx.getChildCount() == 1;
+    private Type getVariableType(ParseTree ctx) {
+        return switch (Lexeme.of(ctx.getChild(0)).getType()) {
+            case ExprLexer.INT -> Type.INT;
+            case ExprLexer.FLOAT -> Type.DOUBLE;
+            case ExprLexer.BOOL -> Type.BOOL;
+            case ExprLexer.STRING -> Type.STRING;
+            case ExprLexer.VOID -> Type.VOID;
+            case ExprLexer.VAR -> Type.DYNAMIC;
+            default -> null;
+        };
     }
 
-    private boolean variableIsAlreadyDeclared(String id) {
-        return isGlobalContext ? globalVariables.containsKey(id) : localVariables.containsKey(id);
+    // args is a single literal token
+    private String getVariableValue(ExprParser.ArgsContext ctx) {
+        return Lexeme.of(ctx.getChild(0)).getText();
+    }
+
+    private boolean shouldNegate(ExprParser.UnaryExpressionContext ctx) {
+        int negCount = ctx.getChildCount() - 1;
+        return negCount % 2 == 1;
+    }
+
+    private boolean isGlobalContext() {
+        return symbols.isGlobalScope();
     }
 
     private boolean variableNotDeclared(String id) {
-        return !(globalVariables.containsKey(id) || (!isGlobalContext && localVariables.containsKey(id)));
+        return symbols.lookup(symbols.intern(id)) == null;
     }
 
-    private void addVariableToDeclared(String id, Value value) {
-        if (isGlobalContext) {
-            globalVariables.put(id, value);
-        } else {
-            localVariables.put(id, value);
-        }
+    // Parameters, loop counters, arrays and matrices are bound to themselves, they have no stack slot to load from.
+    private void declareValue(String id, Value value) {
+        symbols.put(symbols.intern(id), new SymbolTable.Symbol(value, null));
     }
 
     private Value getVariable(String id, ParserRuleContext ctx) {
-        Value value = Optional.ofNullable(localVariables.get(id)).orElseGet(() -> globalVariables.get(id));
+        return value(symbol(id, ctx));
+    }
 
-        if (value == null) {
+    private SymbolTable.Symbol symbol(String id, ParserRuleContext ctx) {
+        final var symbol = symbols.lookup(symbols.intern(id));
+        if (symbol == null) {
             Token start = ctx.getStart();
-            logger.severe("Line: " + start.getLine() + " Variable " + id + " not found");
-            exit(1);
+            throw new CompilationException("Line: " + start.getLine() + " Variable " + id + " not found");
         }
+        return symbol;
+    }
 
-        return value;
+    // The last value stored to a global is a register of main, a function has to load the global itself.
+    private Value value(SymbolTable.Symbol symbol) {
+        if (symbols.inFunction() && symbol.storage() != null && symbol.storage().isGlobal()) {
+            return generator.load(symbol.storage());
+        }
+        return symbol.value();
+    }
+
+    private Value reload(SymbolTable.Symbol symbol) {
+        return symbol.storage() == null ? symbol.value() : generator.load(symbol.storage());
+    }
+
+    // Variables are never assigned again, so one declared with a constant keeps it and the branch not taken is dead.
+    private Value condition(SymbolTable.Symbol symbol) {
+        final var inGlobalOfFunction = symbols.inFunction()
+                && symbol.storage() != null
+                && symbol.storage().isGlobal();
+        return symbol.value() instanceof Constant && !inGlobalOfFunction ? symbol.value() : reload(symbol);
     }
 
     private boolean isNotValid(List<ValidationParam> validations) {
@@ -638,8 +922,8 @@ public class LLVMActions extends ExprBaseListener {
             return Type.BOOL;
         } else if (ctx.STRING_VALUE() != null) {
             return Type.STRING;
-        } else if (ctx.ID() != null) {
-            final var id = ctx.ID().getText();
+        } else if (ctx.identifier() != null) {
+            final var id = ctx.identifier().getText();
             final var value = getVariable(id, ctx);
             return value.getType();
         }
@@ -1,30 +1,269 @@
 package org.example.llvm;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import lombok.experimental.UtilityClass;
 import main.java.org.example.ExprLexer;
 import main.java.org.example.ExprParser;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.example.cache.CompilationCache;
 
 @UtilityClass
 public class LLVMFacade {
-    public void compile(String input, String output) throws IOException {
-        CharStream inputStream = CharStreams.fromFileName(input);
+    // part of the compilation cache key; bump whenever the generated code changes for the same input
+    public static final String COMPILER_VERSION = "1.0-SNAPSHOT.4";
+    private static final String WARM_UP_PROGRAM =
+            """
+            int a = 1 + 2 * 3;
+            double b = 1.5 / 2.0 - 0.5;
+            bool c = true && !false || a == 7;
+            string d = "text";
+            var e = 10;
+            array int f = {1, 2, 3};
+            matrix int g = {{1, 2}, {3, 4}};
+            int h = f[1];
+            int i = g[0][1];
+            f[0] = 5;
+            if (c) { print(d); } else { print(a); };
+            repeat (a) { print(b); };
+            for (k = 0 to a) { print(k); };
+            array int l = f + 2;
+            matrix int m = g * g;
+            int n = sum(f);
+            int o = dot(f, l);
+            array double p = [4];
+            int add(int x, int y) { return x + y; };
+            int j = add(1, 2);
+            read(d);
+            """;
 
-        ExprLexer lexer = new ExprLexer(inputStream);
+    // Every call builds its own lexer, parser, listener and generator, so compile is safe to call
+    // repeatedly and from many threads at once. Only the ANTLR DFA cache is shared between calls.
+    public CompileReport compile(String input, String output) throws IOException {
+        return compile(input, output, CompileOptions.defaults());
+    }
+
+    public CompileReport compile(String input, String output, CompileOptions options) throws IOException {
+        final var metrics = new CompileMetrics();
+        final boolean cached = options.isStreamingInput()
+                ? compileMapped(Path.of(input), output, options, metrics)
+                : compileFile(Path.of(input), output, options, metrics);
+        return metrics.report(input, cached);
+    }
+
+    // Returns true when the output was copied from the cache.
+    private boolean compileFile(Path input, String output, CompileOptions options, CompileMetrics metrics)
+            throws IOException {
+        final var cache = options.getCache();
+        if (cache == null) {
+            final CharStream source;
+            try (var phase = metrics.phase("read")) {
+                source = CharStreams.fromPath(input);
+            }
+            compile(source, output, options, metrics);
+            return false;
+        }
+
+        final byte[] source;
+        try (var phase = metrics.phase("read")) {
+            source = Files.readAllBytes(input);
+        }
+        final String key;
+        try (var phase = metrics.phase("cache")) {
+            key = cacheKey(cache, ByteBuffer.wrap(source), options);
+            if (cache.copyTo(key, Path.of(output))) {
+                return true;
+            }
+        }
+
+        compile(
+                CharStreams.fromStream(new ByteArrayInputStream(source), StandardCharsets.UTF_8),
+                output,
+                options,
+                metrics);
+        try (var phase = metrics.phase("cache")) {
+            cache.store(key, Path.of(output));
+        }
+        return false;
+    }
+
+    // Output that went through the LLVM tools also depends on which tools those were.
+    private String cacheKey(CompilationCache cache, ByteBuffer source, CompileOptions options) {
+        final var toolchain = LlvmToolchain.isNeeded(options) ? LlvmToolchain.fingerprint(options) : "";
+        return cache.key(
+                source,
+                COMPILER_VERSION,
+                options + toolchain,
+                options.getOutputFormat().getExtension());
+    }
+
+    private void compile(CharStream inputStream, String output, CompileOptions options, CompileMetrics metrics)
+            throws IOException {
+        ExprLexer lexer = LexemeFactory.lexer(inputStream, new LexemeFactory());
 
         CommonTokenStream tokens = new CommonTokenStream(lexer);
+        try (var phase = metrics.phase("lex")) {
+            tokens.fill();
+        }
         ExprParser parser = new ExprParser(tokens);
 
-        ParseTree tree = parser.prog();
+        ParseTree tree;
+        try (var phase = metrics.phase("parse")) {
+            tree = parse(parser, tokens, options.getParsingMode());
+        }
 
         //        System.out.println(tree.toStringTree(parser));
 
         ParseTreeWalker walker = new ParseTreeWalker();
-        walker.walk(new LLVMActions(output), tree);
+        try (var phase = metrics.phase("walk")) {
+            walker.walk(new LLVMActions(output, new LLVMGenerator(options), options, metrics), tree);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // The source is read through a read-only mapping instead of being copied into a code point array.
+    private boolean compileMapped(Path input, String output, CompileOptions options, CompileMetrics metrics)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new CompilationException("Source file too large to map: " + input);
+            }
+            final MappedByteBuffer source;
+            try (var phase = metrics.phase("read")) {
+                source = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+
+            final var cache = options.getCache();
+            String key = null;
+            if (cache != null) {
+                try (var phase = metrics.phase("cache")) {
+                    key = cacheKey(cache, source, options);
+                    if (cache.copyTo(key, Path.of(output))) {
+                        return true;
+                    }
+                }
+            }
+
+            compileStatements(new MappedCharStream(source, input.toString()), output, options, metrics);
+            if (key != null) {
+                try (var phase = metrics.phase("cache")) {
+                    cache.store(key, Path.of(output));
+                }
+            }
+            return false;
+        }
+    }
+
+    // Parses and walks one top-level expr at a time instead of building the tree for the whole prog, so only
+    // the current statement's tokens and subtree are reachable. The generated module still grows with the program.
+    // Lexing happens on demand here and is counted in the parse phase.
+    private void compileStatements(
+            CharStream inputStream, String output, CompileOptions options, CompileMetrics metrics) throws IOException {
+        ExprLexer lexer = LexemeFactory.lexer(inputStream, new LexemeFactory());
+
+        UnbufferedTokenStream<Token> tokens = new UnbufferedTokenStream<>(lexer);
+        ExprParser parser = new ExprParser(tokens);
+
+        LLVMActions actions = new LLVMActions(output, new LLVMGenerator(options), options, metrics);
+        ParseTreeWalker walker = new ParseTreeWalker();
+        try {
+            while (tokens.LA(1) != Token.EOF) {
+                ParseTree statement;
+                try (var phase = metrics.phase("parse")) {
+                    statement = parseStatement(parser, tokens, options.getParsingMode());
+                }
+                try (var phase = metrics.phase("walk")) {
+                    walker.walk(actions, statement);
+                }
+            }
+            actions.exitProg(null);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Parses the next top-level expr; the caller walks it and drops it before asking for the next one.
+    ParseTree parseStatement(ExprParser parser, TokenStream tokens, ParsingMode mode) {
+        if (mode == ParsingMode.LL) {
+            return parser.expr();
+        }
+
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        if (mode == ParsingMode.SLL) {
+            return parser.expr();
+        }
+
+        // same two-stage strategy as parse(), but the retry only rewinds to the start of this statement,
+        // which the mark keeps buffered even in an unbuffered token stream
+        final int marker = tokens.mark();
+        final int start = tokens.index();
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.removeErrorListeners();
+        try {
+            return parser.expr();
+        } catch (ParseCancellationException e) {
+            tokens.seek(start);
+            parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            return parser.expr();
+        } finally {
+            tokens.release(marker);
+        }
+    }
+
+    private ParseTree parse(ExprParser parser, CommonTokenStream tokens, ParsingMode mode) {
+        if (mode == ParsingMode.LL) {
+            return parser.prog();
+        }
+
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        if (mode == ParsingMode.SLL) {
+            return parser.prog();
+        }
+
+        // SLL is enough for nearly every valid input; a syntax error under SLL may be a real one
+        // or an SLL conflict, so only then re-parse the whole input with full LL and normal error reporting
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.removeErrorListeners();
+        try {
+            return parser.prog();
+        } catch (ParseCancellationException e) {
+            tokens.seek(0);
+            parser.reset();
+            parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            return parser.prog();
+        }
+    }
+
+    // Parses a small program touching every rule so the parser's shared DFA cache is populated before
+    // several compilations start predicting concurrently.
+    public void warmUp() {
+        ExprLexer lexer = LexemeFactory.lexer(CharStreams.fromString(WARM_UP_PROGRAM), new LexemeFactory());
+        ExprParser parser = new ExprParser(new CommonTokenStream(lexer));
+        parser.prog();
     }
 }
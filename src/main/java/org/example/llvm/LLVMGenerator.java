@@ -2,521 +2,825 @@ package org.example.llvm;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import org.example.ir.BasicBlock;
+import org.example.ir.ElementPointer;
+import org.example.ir.Global;
+import org.example.ir.Instruction;
+import org.example.ir.IrFunction;
+import org.example.ir.IrModule;
+import org.example.ir.IrType;
+import org.example.ir.Opcode;
 import org.example.type.*;
 
+/**
+ * Builds the in-memory IR ({@link IrModule}) for a single compilation. All counters, index stacks and the module live
+ * in the instance, so every compilation gets its own generator and several of them can run side by side in one JVM.
+ */
 public class LLVMGenerator {
 
     private static final int MAX_READ_STRING_LENGTH = 100;
-    static String headerText = "";
-    static String mainText = "";
-    static String functionText = "";
-    static boolean insideFunction = false;
-    static int reg = 1;
-    static int str = 1;
-    static int ifIndex = 1;
-    static int elseIndex = 1;
-    static int loopIndex = 1;
-    static int matrixRowIndex = 1;
-    static Deque<Integer> ifIndexStack = new ArrayDeque<>();
-    static Deque<Integer> elseIndexStack = new ArrayDeque<>();
-    static Deque<Integer> loopIndexStack = new ArrayDeque<>();
-
-    static void printf(Value value) {
+    static final IrType STRING_POINTER = IrType.I8.pointer();
+    private static final IrType.FunctionOf PRINTF_TYPE =
+            new IrType.FunctionOf(IrType.I32, List.of(STRING_POINTER), true);
+    static final String MEMCPY = "llvm.memcpy.p0i8.p0i8.i64";
+    static final IrType.FunctionOf MEMCPY_TYPE =
+            new IrType.FunctionOf(IrType.VOID, List.of(STRING_POINTER, STRING_POINTER, IrType.I64, IrType.I1), false);
+    private static final IrType.FunctionOf CALLOC_TYPE =
+            new IrType.FunctionOf(STRING_POINTER, List.of(IrType.I64, IrType.I64), false);
+    private static final IrType.FunctionOf FREE_TYPE =
+            new IrType.FunctionOf(IrType.VOID, List.of(STRING_POINTER), false);
+    private static final String VECTORIZE_ENABLE = "!\"llvm.loop.vectorize.enable\", i1 true";
+    // counted loops always terminate, which lets LLVM delete ones whose body turns out empty
+    private static final String MUST_PROGRESS = "!\"llvm.loop.mustprogress\"";
+    private final CompileOptions options;
+    private final IrModule module = new IrModule();
+    private final IrFunction main = new IrFunction("main", IrType.I32, List.of(), "nounwind");
+    private final Deque<Integer> ifIndexStack = new ArrayDeque<>();
+    private final Deque<Integer> elseIndexStack = new ArrayDeque<>();
+    private final Deque<Loop> loopStack = new ArrayDeque<>();
+    // arrays are only declared at the top level, so main frees them all before it returns
+    private final List<Value> heapArrays = new ArrayList<>();
+    // one private unnamed_addr global per distinct string literal, in the order they were added
+    private final Map<String, ElementPointer> strings = new LinkedHashMap<>();
+    // null in the printf output mode
+    private final BufferedOutput output;
+    private IrFunction function;
+    private boolean finished = false;
+    private int reg = 1;
+    private int str = 1;
+    private int ifIndex = 1;
+    private int elseIndex = 1;
+    private int loopIndex = 1;
+    private int vectorLoopIndex = 1;
+    private int logicIndex = 1;
+
+    public LLVMGenerator() {
+        this(CompileOptions.defaults());
+    }
+
+    public LLVMGenerator(CompileOptions options) {
+        this.options = options;
+        module.declare("printf", PRINTF_TYPE);
+        module.declare("scanf", PRINTF_TYPE);
+        addStringConstant("strps", "%s\\0A", 4);
+        addStringConstant("strpi", "%d\\0A", 4);
+        addStringConstant("strpd", "%f\\0A", 4);
+        addStringConstant("strs", "%10s", 5);
+        addStringConstant("strspi", "%d", 3);
+        addStringConstant("true_text", "true", 5);
+        addStringConstant("false_text", "false", 6);
+        output = options.getOutputMode() == OutputMode.BUFFERED ? new BufferedOutput(module) : null;
+    }
+
+    void printf(Value value) {
+        if (output != null) {
+            emit(output.print(value));
+            return;
+        }
+
         Type type = value.getType();
         if (type == Type.BOOL) {
             printf_boolean(value);
             return;
         }
 
-        final var text = "%" + reg + " = call i32 (i8*, ...) "
-                + "@printf(i8* getelementptr inbounds ([4 x i8], [4 x i8]* "
-                + "@"
-                + type.getLlvmStringRepresentation() + ", i32 0, i32 0), "
-                + type.getLlvmRepresentation()
-                + " "
-                + value.getName() + ")";
-        addToText(text);
-        reg++;
-    }
-
-    static void printf_boolean(Value value) {
-        var text = "";
-        text += "%";
-        text += reg;
-        text += " = icmp eq i1 ";
-        text += value.getName();
-        text += ", 1\n";
-        reg++;
-
-        text += "%";
-        text += reg;
-        text += " = select i1 %";
-        text += reg - 1;
-        text += ", i8* @true_text, i8* @false_text\n";
-        reg++;
-
-        text += "%";
-        text += reg;
-        text +=
-                " = call i32 (i8*, ...) @printf(i8* getelementptr inbounds ([6 x i8], [6 x i8]* @strps, i32 0, i32 0), i8* %";
-        text += reg - 1;
-        text += ")";
-        addToText(text);
-        reg++;
-    }
-
-    static void scanf(Value value) {
+        callPrintf(format(type.getLlvmStringRepresentation()), IrType.of(type), value);
+    }
+
+    void printf_boolean(Value value) {
+        final var isTrue = local(Type.BOOL);
+        emit(Instruction.compare(Opcode.ICMP, "eq", isTrue, IrType.I1, value, constant("1", Type.BOOL)));
+
+        final var text = local(Type.STRING);
+        emit(Instruction.select(
+                text,
+                STRING_POINTER,
+                isTrue,
+                stringPointer("true_text", "true".length() + 1),
+                stringPointer("false_text", "false".length() + 1)));
+
+        callPrintf(format("strps"), STRING_POINTER, text);
+    }
+
+    void scanf(Value value) {
+        if (output != null) {
+            // a prompt printed before has to be on the screen while the program waits
+            emit(output.flush());
+        }
         allocateString("str" + str, MAX_READ_STRING_LENGTH);
-        var text = "%" + reg
-                + " = getelementptr inbounds ["
-                + (MAX_READ_STRING_LENGTH + 1)
-                + " x i8], ["
-                + (MAX_READ_STRING_LENGTH + 1)
-                + " x i8]* %str"
-                + str
-                + ", i64 0, i64 0\n";
-        reg++;
-        text += "store i8* %" + (reg - 1) + ", i8** " + value.getName() + "\n";
-        str++;
-        text += "%"
-                + reg
-                + " = call i32 (i8*, ...) @scanf(i8* getelementptr inbounds ([5 x i8], [5 x i8]* @strs, i32 0, i32 0), i8* %"
-                + (reg - 1)
-                + ")";
-        addToText(text);
-        reg++;
-    }
-
-    static String constantString(String content) {
-        int length = content.getBytes(StandardCharsets.UTF_8).length + 1;
-        headerText += "@str" + str + " = constant [" + length + " x i8] c\"" + content + "\\00\"\n";
-        String n = "str" + str;
-        LLVMGenerator.allocateString(n, (length - 1));
-        var text = "%" + reg + " = bitcast [" + length + " x i8]* %" + n + " to i8*\n";
-        text += "call void @llvm.memcpy.p0i8.p0i8.i64(i8* align 1 %" + reg + ", "
-                + "i8* align 1 getelementptr inbounds (["
-                + length + " x i8], [" + length + " x i8]*" + " @"
-                + n + ", i32 0, i32 0), i64 " + length + ", i1 false)";
-
-        addToText(text);
-        reg++;
+        final var bufferType = IrType.array(MAX_READ_STRING_LENGTH + 1, IrType.I8);
+        final var pointer = local(Type.STRING);
+        emit(Instruction.elementPointer(
+                pointer,
+                bufferType,
+                new Value("str" + str, Type.STRING),
+                IrType.I64,
+                constant("0", Type.INT),
+                constant("0", Type.INT)));
+        emit(Instruction.store(STRING_POINTER, pointer, value));
         str++;
-        return "" + (reg - 1);
-    }
 
-    static void allocateString(String id, int length) {
-        addToText("%" + id + " = alloca [" + (length + 1) + " x i8]");
+        emit(Instruction.call(
+                local(Type.INT),
+                IrType.I32,
+                PRINTF_TYPE,
+                "scanf",
+                new IrType[] {STRING_POINTER, STRING_POINTER},
+                new Value[] {stringPointer("strs", 5), pointer}));
+    }
+
+    // Nothing writes through a string (read swaps in a new buffer), so every use of a literal points at its pooled
+    // global.
+    ElementPointer constantString(String content) {
+        final var pooled = strings.get(content);
+        if (pooled != null) {
+            return pooled;
+        }
+
+        final int length = content.getBytes(StandardCharsets.UTF_8).length + 1;
+        final var arrayType = IrType.array(length, IrType.I8);
+        final var name = "str" + str++;
+        module.addGlobal(new Global(name, true, arrayType, "c\"" + content + "\\00\"", true));
+        final var pointer = new ElementPointer(name, arrayType);
+        strings.put(content, pointer);
+        return pointer;
     }
 
-    static void declare(String id, Type type, boolean isGlobal) {
-        String text = (isGlobal ? "@" : "%");
-        text += id + " = " + (isGlobal ? "global" : "alloca") + " " + type.getLlvmRepresentation();
-        text += (isGlobal ? " " + type.getDefaultValue() : "");
+    void allocateString(String id, int length) {
+        emit(Instruction.alloca(new Value(id, Type.STRING), IrType.array(length + 1, IrType.I8)));
+    }
 
-        addToText(text, isGlobal);
+    void declare(String id, Type type, boolean isGlobal) {
+        if (isGlobal) {
+            module.addGlobal(new Global(id, false, IrType.of(type), type.getDefaultValue()));
+        } else {
+            emit(Instruction.alloca(new Value(id, type), IrType.of(type)));
+        }
     }
 
-    static void assign(String id, Value value, boolean isGlobal) {
-        addToText("store " + value.getType().getLlvmRepresentation() + " " + value.getName() + ", "
-                + value.getType().getLlvmRepresentation() + "* " + (isGlobal ? "@" : "%") + id);
+    void assign(String id, Value value, boolean isGlobal) {
+        emit(Instruction.store(IrType.of(value.getType()), value, new Value(id, value.getType(), isGlobal)));
     }
 
-    static void declareArray(Array array) {
-        addToText(array.getName() + " = alloca [" + array.values.size() + " x i32]");
+    // An array declared with "= [N]" and no values starts zeroed, like the calloc'ed ones.
+    void declareArray(Array array) {
+        final var arrayType = arrayType(array);
+        final var onHeap = allocate(array, arrayType, (long) array.length() * elementSize(array.getType()));
+        if (array.values.isEmpty() && !onHeap) {
+            emit(Instruction.store(arrayType, constant("zeroinitializer", array.getType()), array));
+        }
     }
 
-    static void declareMatrix(Matrix matrix) {
-        addToText(matrix.getName() + " = alloca [" + matrix.rows.size() + " x ["
-                + matrix.rows.getFirst().values.size() + "x i32]*]");
+    // One contiguous row-major block, so an element is one getelementptr and one load away.
+    void declareMatrix(Matrix matrix) {
+        allocate(
+                matrix,
+                matrixType(matrix),
+                (long) matrix.rows.size() * matrix.columns() * elementSize(matrix.getType()));
     }
 
-    static void assignMatrix(Matrix matrix) {
-        int rows = matrix.rows.size();
-        int cols = matrix.rows.getFirst().values.size();
-        matrix.rows.forEach(LLVMGenerator::declareArray);
-        var text = "";
+    void assignMatrix(Matrix matrix) {
+        final var matrixType = matrixType(matrix);
+        if (!matrix.rows.isEmpty() && matrix.rows.stream().allMatch(LLVMGenerator::isConstant)) {
+            final var rowType = IrType.array(matrix.columns(), IrType.of(matrix.getType()));
+            final var initializer = new StringJoiner(", ", "[", "]");
+            matrix.rows.forEach(row -> initializer.add(rowType + " " + constantInitializer(row)));
+            copyInitializer(matrix, matrixType, initializer.toString());
+            return;
+        }
 
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                text += "%" + reg + " = getelementptr inbounds [" + cols + " x i32], [" + cols + " x i32]* "
-                        + matrix.rows.get(i).getName() + ", i32 0, i32 " + j + "\n";
-                text += "store i32 " + matrix.rows.get(i).values.get(j).getName() + ", i32* %" + reg;
-                reg++;
+        final var elementType = IrType.of(matrix.getType());
+        for (int i = 0; i < matrix.rows.size(); i++) {
+            final var row = matrix.rows.get(i);
+            for (int j = 0; j < row.values.size(); j++) {
+                final var element = elementPointer(matrixType, matrix, String.valueOf(i), String.valueOf(j));
+                emit(Instruction.store(elementType, row.values.get(j), element));
             }
         }
-        for (int i = 0; i < rows; i++) {
-            text += "%" + reg + " = getelementptr inbounds [" + rows + " x [" + cols + " x i32]*], [" + rows + " x ["
-                    + cols + " x i32]*]* " + matrix.getName() + ", i32 0, i32 " + i + "\n";
-            text += "store [" + cols + " x i32]* " + matrix.rows.get(i).getName() + ", [" + cols + " x i32]** %" + reg;
-            reg++;
+    }
+
+    // Literal arrays are copied from a constant global in one memcpy instead of a getelementptr and store per element.
+    void assignArray(Array array) {
+        final var arrayType = arrayType(array);
+        if (!array.values.isEmpty() && isConstant(array)) {
+            copyInitializer(array, arrayType, constantInitializer(array));
+            return;
         }
 
-        addToText(text);
+        final var elementType = IrType.of(array.getType());
+        for (int i = 0; i < array.values.size(); i++) {
+            final var element = elementPointer(arrayType, array, String.valueOf(i));
+            emit(Instruction.store(elementType, array.values.get(i), element));
+        }
     }
 
-    static void assignArray(Array array) {
-        int arraySize = array.values.size();
-        for (int i = 0; i < arraySize; i++) {
-            var text = "%" + reg + " = getelementptr inbounds [" + arraySize + " x i32], [" + arraySize + " x i32]* "
-                    + array.getName() + ", i32 0, i32 " + i + "\n";
-            text += "store i32 " + array.values.get(i).getName() + ", i32* %" + reg;
-            addToText(text);
-            reg++;
-        }
+    // result[i] = left[i] operation right[i]; a scalar operand is used for every i
+    void arrayOperation(Array result, Value left, Value right, BiFunction<Value, Value, Value> operation) {
+        final var arrayType = arrayType(result);
+        allocate(result, arrayType, byteSize(arrayType));
+        countedLoop(result.length(), true, i -> {
+            final var value = operation.apply(element(left, i), element(right, i));
+            emit(Instruction.store(IrType.of(result.getType()), value, elementPointer(arrayType, result, i)));
+        });
     }
 
-    static String loadValueByIndex(Array array, String index) {
-        var text = "%" + reg + " = getelementptr inbounds [" + array.values.size() + " x i32], [" + array.values.size()
-                + " x i32]* " + array.getName() + ", i32 0, i32 " + index + "\n";
-        reg++;
-        text += "%" + reg + " = load i32, i32* %" + (reg - 1);
-        addToText(text);
-        reg++;
-        return reg - 1 + "";
-    }
-
-    static String loadValueByIndex(Matrix matrix, String rowIndex, String colIndex) {
-        final var rows = matrix.rows.size();
-        final var cols = matrix.rows.getFirst().values.size();
-        var text = "%" + reg + " = getelementptr inbounds [" + rows + " x [" + cols + " x i32]*], [" + rows + " x ["
-                + cols + " x i32]*]* " + matrix.getName() + ", i32 0, i32 " + rowIndex + "\n";
-        reg++;
-        text += "%" + reg + " = load [" + cols + " x i32]*, [" + cols + " x i32]* %" + (reg - 1) + "\n";
-        reg++;
-        text += "%" + reg + " = getelementptr inbounds [" + cols + " x i32], [" + cols + " x i32]* %" + (reg - 1)
-                + ", i32 0, i32 " + colIndex + "\n";
-        reg++;
-        text += "%" + reg + " = load i32, i32* %" + (reg - 1);
-        addToText(text);
-        reg++;
-        return reg - 1 + "";
-    }
-
-    static Value load(String id, Value value, boolean isGlobal) {
-        final var text = "%" + reg
-                + " = load "
-                + value.getType().getLlvmRepresentation()
-                + ", "
-                + value.getType().getLlvmRepresentation()
-                + "* "
-                + (isGlobal ? "@" : "%")
-                + id;
-
-        addToText(text);
-        reg++;
-        // local var
-        return new Value(String.valueOf(reg - 1), value.getType());
-    }
-
-    static Value mult(Value value1, Value value2) {
-        final var text = "%" + reg
-                + " = "
-                + (value1.getType() == Type.DOUBLE ? "f" : "")
-                + "mul "
-                + value1.getType().getLlvmRepresentation()
-                + " "
-                + value1.getName()
-                + ", "
-                + value2.getName();
-
-        addToText(text);
-        reg++;
-        return value1.withName(String.valueOf(reg - 1)).toLocal();
-    }
-
-    static Value div(Value value1, Value value2) {
-        final var result = "%" + reg;
-        final var op = value1.getType() == Type.DOUBLE ? "f" : "s";
-        final var text = result + " = " + op + "div " + value1.getType().getLlvmRepresentation() + " "
-                + value1.getName() + ", " + value2.getName();
-
-        addToText(text);
-        reg++;
-        return value1.withName(String.valueOf(reg - 1)).toLocal();
-    }
-
-    static Value add(Value value1, Value value2) {
-        final var text = "%" + reg
-                + " = "
-                + (value1.getType() == Type.DOUBLE ? "f" : "")
-                + "add "
-                + value1.getType().getLlvmRepresentation()
-                + " "
-                + value1.getName()
-                + ", "
-                + value2.getName();
-
-        addToText(text);
-        reg++;
-        return value1.withName(String.valueOf(reg - 1)).toLocal();
-    }
-
-    static Value sub(Value value1, Value value2) {
-        final var result = "%" + reg;
-        final var op = value1.getType() == Type.DOUBLE ? "f" : "";
-        final var text = result + " = " + op + "sub " + value1.getType().getLlvmRepresentation() + " "
-                + value1.getName() + ", " + value2.getName();
-
-        addToText(text);
-        reg++;
-        return value1.withName(String.valueOf(reg - 1)).toLocal();
-    }
-
-    static Value and(Value value1, Value value2) {
-        final var labelTrue = "and_true_" + reg;
-        final var labelNotTrue = "and_not_true_" + reg;
-        final var labelEnd = "and_end_" + reg;
-        final var result = "%" + reg;
-        final var trueVal = "%true_" + reg;
-        final var falseVal = "%false_" + reg;
-        var text = "";
-        reg++;
-
-        // Jeśli value1 jest fałszywe, skaczemy od razu do końca
-        text += "br i1 " + value1.getName() + ", label %" + labelTrue + ", label %" + labelNotTrue + "\n";
-
-        // Blok jeśli value1 == true sprawdzamy value2
-        text += labelTrue + ":\n";
-        text += trueVal + " = and i1 " + value1.getName() + ", " + value2.getName() + "\n";
-        text += "br label %" + labelEnd + "\n";
-
-        // Jeśli value1 == false, zwracamy 0
-        text += labelNotTrue + ":\n";
-        text += falseVal + " = and i1 0, 0\n";
-        text += "br label %" + labelEnd + "\n";
-
-        // PHI node – wybór zależnie od ścieżki
-        text += labelEnd + ":\n";
-        text += result + " = phi i1 [ " + trueVal + ", %" + labelTrue + " ], [ " + falseVal + ", %" + labelNotTrue
-                + " ]";
-        addToText(text);
-        return new Value(String.valueOf(reg - 1), Type.BOOL);
-    }
-
-    static Value or(Value value1, Value value2) {
-        final var labelTrue = "or_true_" + reg;
-        final var labelNotTrue = "or_not_true_" + reg;
-        final var labelEnd = "or_end_" + reg;
-        final var result = "%" + reg;
-        final var trueVal = "%true_" + reg;
-        final var falseVal = "%false_" + reg;
-        var text = "";
-        reg++;
-
-        // Jeśli value1 jest prawdziwe, skaczemy od razu do labelTrue
-        text += "br i1 " + value1.getName() + ", label %" + labelTrue + ", label %" + labelNotTrue + "\n";
-
-        // Blok jeśli value1 == true — zwracamy od razu true
-        text += labelTrue + ":\n";
-        text += trueVal + " = or i1 1, 1\n";
-        text += "br label %" + labelEnd + "\n";
-
-        // Blok jeśli value1 != true — obliczamy or
-        text += labelNotTrue + ":\n";
-        text += falseVal + " = or i1 " + value1.getName() + ", " + value2.getName() + "\n";
-        text += "br label %" + labelEnd + "\n";
-
-        // PHI node — wynik końcowy
-        text += labelEnd + ":\n";
-        text += result + " = phi i1 [ " + trueVal + ", %" + labelTrue + " ], [ " + falseVal + ", %" + labelNotTrue
-                + " ]";
-        addToText(text);
-        return new Value(String.valueOf(reg - 1), Type.BOOL);
-    }
-
-    static Value neg(Value value) {
-        final var result = "%" + reg;
-        final var text = result + " = xor i1 " + value.getName() + ", 1";
-        addToText(text);
-        reg++;
-        return value.withName(String.valueOf(reg - 1));
-    }
-
-    static Value xor(Value value1, Value value2) {
-        final var result = "%" + reg;
-        final var text = result + " = xor i1 " + value1.getName() + ", " + value2.getName();
-        addToText(text);
-        reg++;
-        return new Value(String.valueOf(reg - 1), Type.BOOL);
-    }
-
-    static Value xand(Value value1, Value value2) {
-        final var result = "%" + reg;
-        final var text = result + " = " + value1.getType().getLlvmComparator()
-                + " eq " + value2.getType().getLlvmRepresentation()
-                + " " + value1.getName() + ", " + value2.getName();
-
-        addToText(text);
-        reg++;
-
-        return new Value(String.valueOf(reg - 1), Type.BOOL);
-    }
-
-    static void defineFunction(Function function) {
-        insideFunction = true;
-        functionText += "define " + function.getReturnType().getLlvmRepresentation() + " @" + function.getName() + "(";
-
-        for (int i = 0; i < function.getParameters().size(); i++) {
-            final var param = function.getParameters().get(i);
-            functionText += param.getType().getLlvmRepresentation() + " " + param.getName();
-
-            if (i != function.getParameters().size() - 1) {
-                functionText += ", ";
-            }
-        }
+    Value sum(Array array) {
+        return reduce(array, null);
+    }
 
-        functionText += ") {\n";
+    Value dot(Array left, Array right) {
+        return reduce(left, right);
     }
 
-    static void closeFunction(Function function) {
-        if (function.getReturnType() == Type.VOID) {
-            functionText += "ret void\n";
+    // i-k-j order: the innermost loop walks a row of right and of result, so it is the one that vectorizes
+    void matrixProduct(Matrix result, Matrix left, Matrix right) {
+        final var resultType = matrixType(result);
+        if (!allocate(result, resultType, byteSize(resultType))) {
+            emit(Instruction.store(resultType, constant("zeroinitializer", result.getType()), result));
         }
 
-        functionText += "}\n";
-        insideFunction = false;
+        final var type = result.getType();
+        countedLoop(
+                left.rows.size(),
+                false,
+                i -> countedLoop(left.columns(), false, k -> {
+                    final var factor = loadElement(elementPointer(matrixType(left), left, i, k), type);
+                    countedLoop(right.columns(), true, j -> {
+                        final var target = elementPointer(resultType, result, i, j);
+                        final var product =
+                                mult(factor, loadElement(elementPointer(matrixType(right), right, k, j), type));
+                        emit(Instruction.store(IrType.of(type), add(loadElement(target, type), product), target));
+                    });
+                }));
     }
 
-    static Value callFunction(Function function, List<Value> args) {
-        boolean isNotVoid = function.getReturnType() != Type.VOID;
-        if (isNotVoid) {
-            addToText("%" + reg + " = ");
-        }
+    Value loadValueByIndex(Array array, String index) {
+        final var element = elementPointer(arrayType(array), array, index);
+        return loadElement(element, array.getType());
+    }
 
-        var text = "call " + function.getReturnType().getLlvmRepresentation() + " @" + function.getName() + "(";
+    Value loadValueByIndex(Matrix matrix, String rowIndex, String colIndex) {
+        return loadElement(elementPointer(matrixType(matrix), matrix, rowIndex, colIndex), matrix.getType());
+    }
 
-        for (var i = 0; i < args.size(); i++) {
-            final var arg = args.get(i);
+    Value load(Value storage) {
+        final var result = local(storage.getType());
+        emit(Instruction.load(result, IrType.of(storage.getType()), storage));
+        return result;
+    }
 
-            text += arg.getType().getLlvmRepresentation() + " " + arg.getName();
+    Value mult(Value value1, Value value2) {
+        return arithmetic(Opcode.MUL, Opcode.FMUL, value1, value2);
+    }
 
-            if (i != args.size() - 1) {
-                text += ", ";
+    Value div(Value value1, Value value2) {
+        return arithmetic(Opcode.SDIV, Opcode.FDIV, value1, value2);
+    }
+
+    Value add(Value value1, Value value2) {
+        return arithmetic(Opcode.ADD, Opcode.FADD, value1, value2);
+    }
+
+    Value sub(Value value1, Value value2) {
+        return arithmetic(Opcode.SUB, Opcode.FSUB, value1, value2);
+    }
+
+    /**
+     * Starts a short-circuit {@code &&} or {@code ||} over any number of operands, emitted while the operands are:
+     * after each one but the last, logicOperand branches to the end if it decides the result, so the operands after it
+     * only run when they still matter. logicEnd merges the paths with a phi. A constant operand needs no branch: it
+     * either changes nothing or settles the result of the paths still running.
+     */
+    Logic logicStart(Operator operator) {
+        return new Logic(logicIndex++, operator == Operator.AND);
+    }
+
+    void logicOperand(Logic logic, Value operand) {
+        if (logic.decided != null) {
+            return;
+        }
+        if (operand instanceof Constant) {
+            if (isTrue(operand) != logic.isAnd) {
+                logic.decided = operand;
             }
+            return;
         }
 
-        text += ")";
-        addToText(text);
-        reg++;
-        return isNotVoid ? new Value(String.valueOf(reg - 1), function.getReturnType()) : null;
+        final var current = current();
+        final var next = current.block(logic.label("next") + "_" + logic.values.size());
+        final var end = current.block(logic.label("end"));
+        logic.values.add(constant(Boolean.toString(!logic.isAnd), Type.BOOL));
+        logic.blocks.add(current.getInsertionBlock());
+        emit(logic.isAnd ? Instruction.branch(operand, next, end) : Instruction.branch(operand, end, next));
+        current.startBlock(next);
     }
 
-    static void ret(Value value) {
-        functionText += "ret " + value.getType().getLlvmRepresentation() + " " + value.getName() + "\n";
+    Value logicEnd(Logic logic, Value last) {
+        final var value = logic.decided != null ? logic.decided : last;
+        if (logic.values.isEmpty()) {
+            return value;
+        }
+
+        final var current = current();
+        logic.values.add(value);
+        logic.blocks.add(current.getInsertionBlock());
+        jumpTo(logic.label("end"));
+        final var result = local(Type.BOOL);
+        emit(Instruction.phi(
+                result, IrType.I1, logic.values.toArray(Value[]::new), logic.blocks.toArray(BasicBlock[]::new)));
+        return result;
+    }
+
+    // values and blocks are the phi's incoming pairs, one per operand that branched to the end plus the last one
+    static final class Logic {
+        private final int index;
+        private final boolean isAnd;
+        private final List<Value> values = new ArrayList<>();
+        private final List<BasicBlock> blocks = new ArrayList<>();
+        // the constant operand that settled the result, the operands after it are not looked at
+        private Value decided;
+
+        private Logic(int index, boolean isAnd) {
+            this.index = index;
+            this.isAnd = isAnd;
+        }
+
+        String label(String name) {
+            return (isAnd ? "and_" : "or_") + name + "_" + index;
+        }
+    }
+
+    private static boolean isTrue(Value constant) {
+        return constant.getName().equals("true") || constant.getName().equals("1");
+    }
+
+    Value neg(Value value) {
+        final var result = local(value.getType());
+        emit(Instruction.binary(Opcode.XOR, result, IrType.I1, value, constant("1", Type.BOOL)));
+        return result;
+    }
+
+    Value xor(Value value1, Value value2) {
+        final var result = local(Type.BOOL);
+        emit(Instruction.binary(Opcode.XOR, result, IrType.I1, value1, value2));
+        return result;
+    }
+
+    Value xand(Value value1, Value value2) {
+        final var result = local(Type.BOOL);
+        final var isDouble = value1.getType() == Type.DOUBLE;
+        emit(Instruction.compare(
+                isDouble ? Opcode.FCMP : Opcode.ICMP,
+                isDouble ? "oeq" : "eq",
+                result,
+                IrType.of(value2.getType()),
+                value1,
+                value2));
+        return result;
+    }
+
+    void defineFunction(Function function) {
+        this.function = new IrFunction(
+                function.getName(),
+                IrType.of(function.getReturnType()),
+                new ArrayList<>(function.getParameters()),
+                null);
+        module.addFunction(this.function);
     }
 
-    static void loopStart(Value repeats) {
-        loopIndexStack.push(loopIndex);
-        var text = "";
-        text += "%counter_" + loopIndex + " = alloca i32\n";
-        text += "store i32 0, i32* %counter_" + loopIndex + "\n";
-        text += "br label %loop_" + loopIndex + "\n";
-        text += "loop_" + loopIndex + ":\n";
-        text += "%counter_val_" + loopIndex + " = load i32, i32* %counter_" + loopIndex + "\n";
-        text += "%cmp_" + loopIndex + " = icmp slt i32 %counter_val_" + loopIndex + ", " + repeats.getName() + "\n";
-        text += "br i1 %cmp_" + loopIndex + ", label %body_" + loopIndex + ", label %end_" + loopIndex + "\n";
-        text += "body_" + loopIndex + ":";
+    void closeFunction(Function function) {
+        if (function.getReturnType() == Type.VOID) {
+            emit(Instruction.ret(IrType.VOID, null));
+        }
 
-        loopIndex++;
-        addToText(text, false);
+        this.function = null;
     }
 
-    static void loopEnd() {
-        final var index = loopIndexStack.pop();
-        var text = "";
-        text += "%counter_val_after_" + index + " = load i32, i32* %counter_" + index + "\n";
-        text += "%inc_" + index + " = add i32 %counter_val_after_" + index + ", 1\n";
-        text += "store i32 %inc_" + index + ", i32* %counter_" + index + "\n";
-        text += "br label %loop_" + index + "\n";
-        text += "end_" + index + ":\n";
-        addToText(text, false);
+    Value callFunction(Function function, List<Value> args) {
+        boolean isNotVoid = function.getReturnType() != Type.VOID;
+        final var result = isNotVoid ? local(function.getReturnType()) : null;
+
+        final var argumentTypes = new IrType[args.size()];
+        for (var i = 0; i < args.size(); i++) {
+            argumentTypes[i] = IrType.of(args.get(i).getType());
+        }
+
+        emit(Instruction.call(
+                result,
+                IrType.of(function.getReturnType()),
+                null,
+                function.getName(),
+                argumentTypes,
+                args.toArray(new Value[0])));
+        return result;
+    }
+
+    void ret(Value value) {
+        emit(Instruction.ret(IrType.of(value.getType()), value));
+    }
+
+    /**
+     * Opens a counted loop: the current block becomes the preheader, the header holds a phi counter running from start
+     * while it is below end. Returns the counter so the body can use it; loopEnd adds the latch.
+     */
+    Value loopStart(Value start, Value end) {
+        final var index = loopIndex++;
+        final var current = current();
+        final var preheader = current.getInsertionBlock();
+        final var header = current.block("loop_" + index);
+        emit(Instruction.branch(header));
+        current.startBlock(header);
+
+        final var counter = new Value("counter_" + index, Type.INT);
+        final var induction =
+                Instruction.phi(counter, IrType.I32, new Value[] {start, null}, new BasicBlock[] {preheader, null});
+        emit(induction);
+        final var condition = new Value("cmp_" + index, Type.BOOL);
+        emit(Instruction.compare(Opcode.ICMP, "slt", condition, IrType.I32, counter, end));
+
+        final var body = current.block("body_" + index);
+        emit(Instruction.branch(condition, body, current.block("end_" + index)));
+        current.startBlock(body);
+        loopStack.push(new Loop(index, induction, body));
+        return counter;
+    }
+
+    void loopEnd() {
+        final var loop = loopStack.pop();
+        final var current = current();
+        final var latch = current.getInsertionBlock();
+        final var increment = new Value("inc_" + loop.index(), Type.INT);
+        emit(Instruction.binary(
+                Opcode.ADD, increment, IrType.I32, loop.induction().getResult(), constant("1", Type.INT)));
+        loop.induction().setOperand(1, increment);
+        loop.induction().setTarget(1, latch);
+
+        final var hints = new ArrayList<>(List.of(MUST_PROGRESS));
+        if (options.getLoopUnrollCount() > 0) {
+            hints.add("!\"llvm.loop.unroll.count\", i32 " + options.getLoopUnrollCount());
+        }
+        // a single block without calls or allocas is the body shape the loop vectorizer can take on
+        if (latch == loop.body()
+                && latch.getInstructions().stream()
+                        .noneMatch(instruction ->
+                                instruction.getOpcode() == Opcode.CALL || instruction.getOpcode() == Opcode.ALLOCA)) {
+            hints.add(VECTORIZE_ENABLE);
+        }
+        emit(Instruction.branch(current.block("loop_" + loop.index())).withMetadata(loopMetadata(hints)));
+        current.startBlock("end_" + loop.index());
     }
 
-    static void ifStart() {
+    void ifStart() {
         ifIndexStack.push(ifIndex);
-        var text = "";
-        text += "br label %if_start_" + ifIndex + "\n";
-        text += "if_start_" + ifIndex + ":";
+        jumpTo("if_start_" + ifIndex);
         ifIndex++;
-        addToText(text, false);
     }
 
-    static void ifEnd() {
+    void ifEnd() {
         final var ifIndex = ifIndexStack.pop();
-        var text = "";
-        text += "br label %if_end_" + ifIndex + "\n";
-        text += "if_end_" + ifIndex + ":";
-        addToText(text, false);
+        jumpTo("if_end_" + ifIndex);
     }
 
-    static void elseStart() {
+    void elseStart() {
         elseIndexStack.push(elseIndex);
-        var text = "";
-        text += "br label %else_start_" + elseIndex + "\n";
-        text += "else_start_" + elseIndex + ":";
+        jumpTo("else_start_" + elseIndex);
         elseIndex++;
-        addToText(text, false);
     }
 
-    static void evaluateIfCondition(Value value) {
+    void evaluateIfCondition(Value value) {
         final var ifIndex = ifIndexStack.peek();
-        var text = "";
-        text += "br i1 " + value.getName() + ", label %if_true_" + ifIndex + ", label %if_end_" + ifIndex + "\n";
-        text += "if_true_" + ifIndex + ":";
-        addToText(text, false);
+        final var current = current();
+        final var ifTrue = current.block("if_true_" + ifIndex);
+        emit(Instruction.branch(value, ifTrue, current.block("if_end_" + ifIndex)));
+        current.startBlock(ifTrue);
     }
 
-    static void evaluateElseCondition(Value value) {
+    void evaluateElseCondition(Value value) {
         final var elseIndex = elseIndexStack.peek();
-        var text = "";
-        text += "br i1 " + value.getName() + ", label %else_end_" + elseIndex + ", label %else_true_" + elseIndex
-                + "\n";
-        text += "else_true_" + elseIndex + ":";
-        addToText(text, false);
+        final var current = current();
+        final var elseTrue = current.block("else_true_" + elseIndex);
+        emit(Instruction.branch(value, current.block("else_end_" + elseIndex), elseTrue));
+        current.startBlock(elseTrue);
     }
 
-    static void elseEnd() {
+    void elseEnd() {
         final var elseIndex = elseIndexStack.pop();
-        var text = "";
-        text += "br label %else_end_" + elseIndex + "\n";
-        text += "else_end_" + elseIndex + ":";
-        addToText(text, false);
+        jumpTo("else_end_" + elseIndex);
     }
 
-    static void addToText(String text) {
-        if (insideFunction) {
-            functionText += text + "\n";
-        } else {
-            mainText += text + "\n";
+    IrModule finish() {
+        if (!finished) {
+            if (output != null) {
+                main.append(output.flush());
+            }
+            heapArrays.forEach(pointer -> main.append(free(pointer)));
+            main.append(Instruction.ret(IrType.I32, constant("0", Type.INT)));
+            module.addFunction(main);
+            finished = true;
         }
+        return module;
+    }
+
+    // Only valid between top-level statements, when no function is open and every index stack is empty.
+    Checkpoint checkpoint() {
+        return new Checkpoint(
+                module.mark(),
+                main.mark(),
+                heapArrays.size(),
+                strings.size(),
+                finished,
+                reg,
+                str,
+                ifIndex,
+                elseIndex,
+                loopIndex,
+                vectorLoopIndex,
+                logicIndex);
+    }
+
+    void restore(Checkpoint checkpoint) {
+        module.truncate(checkpoint.module());
+        main.truncate(checkpoint.main());
+        heapArrays.subList(checkpoint.heapArrays(), heapArrays.size()).clear();
+        final var pooled = strings.keySet().iterator();
+        for (int i = 0; pooled.hasNext(); i++) {
+            pooled.next();
+            if (i >= checkpoint.strings()) {
+                pooled.remove();
+            }
+        }
+        function = null;
+        ifIndexStack.clear();
+        elseIndexStack.clear();
+        loopStack.clear();
+        finished = checkpoint.finished();
+        reg = checkpoint.reg();
+        str = checkpoint.str();
+        ifIndex = checkpoint.ifIndex();
+        elseIndex = checkpoint.elseIndex();
+        loopIndex = checkpoint.loopIndex();
+        vectorLoopIndex = checkpoint.vectorLoopIndex();
+        logicIndex = checkpoint.logicIndex();
     }
 
-    static void addToText(String text, boolean isGlobal) {
-        if (isGlobal) {
-            headerText += text + "\n";
-        } else {
-            addToText(text);
+    private IrFunction current() {
+        return function != null ? function : main;
+    }
+
+    private void emit(Instruction instruction) {
+        current().append(instruction);
+    }
+
+    private void jumpTo(String label) {
+        final var current = current();
+        final var block = current.block(label);
+        emit(Instruction.branch(block));
+        current.startBlock(block);
+    }
+
+    private Value local(Type type) {
+        return new Value(String.valueOf(reg++), type);
+    }
+
+    private Value arithmetic(Opcode integerOpcode, Opcode doubleOpcode, Value value1, Value value2) {
+        final var opcode = value1.getType() == Type.DOUBLE ? doubleOpcode : integerOpcode;
+        final var result = local(value1.getType());
+        emit(Instruction.binary(opcode, result, IrType.of(value1.getType()), value1, value2));
+        return result;
+    }
+
+    // Allocas target, or above the heap threshold points it at zeroed heap memory; returns true for the heap.
+    private boolean allocate(Value target, IrType type, long bytes) {
+        if (bytes <= options.getHeapArrayThreshold()) {
+            emit(Instruction.alloca(target, type));
+            return false;
+        }
+
+        module.declare("calloc", CALLOC_TYPE);
+        module.declare("free", FREE_TYPE);
+        final var memory = local(Type.STRING);
+        final var elementSize = elementSize(target.getType());
+        emit(Instruction.call(
+                memory, STRING_POINTER, null, "calloc", new IrType[] {IrType.I64, IrType.I64}, new Value[] {
+                    constant(String.valueOf(bytes / elementSize), Type.INT),
+                    constant(String.valueOf(elementSize), Type.INT)
+                }));
+        emit(Instruction.bitcast(target, STRING_POINTER, memory, type.pointer()));
+        heapArrays.add(memory);
+        return true;
+    }
+
+    private void copyInitializer(Value target, IrType type, String initializer) {
+        // identifiers cannot contain dots, so the name never clashes with a program global
+        final var name = target.getName().substring(1) + ".init";
+        module.addGlobal(new Global(name, true, type, initializer, true));
+
+        final var pointer = local(Type.STRING);
+        emit(Instruction.bitcast(pointer, type.pointer(), target, STRING_POINTER));
+        module.declare(MEMCPY, MEMCPY_TYPE);
+        emit(Instruction.call(
+                null,
+                IrType.VOID,
+                null,
+                MEMCPY,
+                new IrType[] {STRING_POINTER, STRING_POINTER, IrType.I64, IrType.I1},
+                new Value[] {
+                    pointer,
+                    constant("bitcast (" + type.pointer() + " @" + name + " to " + STRING_POINTER + ")", Type.STRING),
+                    constant(String.valueOf(byteSize(type)), Type.INT),
+                    constant("false", Type.BOOL)
+                }));
+    }
+
+    private static boolean isConstant(Array array) {
+        return array.values.stream().allMatch(Constant.class::isInstance);
+    }
+
+    private static String constantInitializer(Array array) {
+        final var elementType = IrType.of(array.getType());
+        final var initializer = new StringJoiner(", ", "[", "]");
+        array.values.forEach(value -> initializer.add(elementType + " " + value.getName()));
+        return initializer.toString();
+    }
+
+    private static long byteSize(IrType type) {
+        if (type instanceof IrType.ArrayOf array) {
+            return array.length() * byteSize(array.element());
+        }
+        return type == IrType.DOUBLE ? Double.BYTES : Integer.BYTES;
+    }
+
+    private static Instruction free(Value pointer) {
+        return Instruction.call(null, IrType.VOID, null, "free", new IrType[] {STRING_POINTER}, new Value[] {pointer});
+    }
+
+    private Value reduce(Array left, Array right) {
+        final var zero = constant(left.getType() == Type.DOUBLE ? "0.0" : "0", left.getType());
+        return countedLoop(left.length(), zero, true, (i, accumulator) -> {
+            final var term = right == null ? element(left, i) : mult(element(left, i), element(right, i));
+            return add(accumulator, term);
+        });
+    }
+
+    private void countedLoop(int count, boolean innermost, Consumer<Value> body) {
+        countedLoop(count, null, innermost, (i, accumulator) -> {
+            body.accept(i);
+            return null;
+        });
+    }
+
+    /**
+     * Emits a loop running body for i = 0 .. count - 1, tested at the bottom since count is known to be positive. The
+     * induction variable and, when initial is given, an accumulator are phis; body gets both and returns the next
+     * accumulator. Returns the accumulator after the last iteration. Innermost loops ask the loop vectorizer to
+     * vectorize them.
+     */
+    private Value countedLoop(int count, Value initial, boolean innermost, BiFunction<Value, Value, Value> body) {
+        if (count == 0) {
+            return initial;
         }
+
+        final var current = current();
+        final var index = vectorLoopIndex++;
+        final var preheader = current.getInsertionBlock();
+        final var loop = current.block("vec_loop_" + index);
+        emit(Instruction.branch(loop));
+        current.startBlock(loop);
+
+        final var induction = new Value("vec_i_" + index, Type.INT);
+        final var next = new Value("vec_next_" + index, Type.INT);
+        final var inductionPhi = Instruction.phi(
+                induction, IrType.I32, new Value[] {constant("0", Type.INT), next}, new BasicBlock[] {preheader, loop});
+        emit(inductionPhi);
+        Value accumulator = null;
+        Instruction accumulatorPhi = null;
+        if (initial != null) {
+            accumulator = new Value("vec_acc_" + index, initial.getType());
+            accumulatorPhi = Instruction.phi(
+                    accumulator, IrType.of(initial.getType()), new Value[] {initial, null}, new BasicBlock[] {
+                        preheader, loop
+                    });
+            emit(accumulatorPhi);
+        }
+
+        final var result = body.apply(induction, accumulator);
+        // nested loops leave the insertion point in their exit block, which then is the latch
+        final var latch = current.getInsertionBlock();
+        inductionPhi.setTarget(1, latch);
+        if (accumulatorPhi != null) {
+            accumulatorPhi.setOperand(1, result);
+            accumulatorPhi.setTarget(1, latch);
+        }
+
+        emit(Instruction.binary(Opcode.ADD, next, IrType.I32, induction, constant("1", Type.INT)));
+        final var done = new Value("vec_done_" + index, Type.BOOL);
+        emit(Instruction.compare(Opcode.ICMP, "eq", done, IrType.I32, next, constant(String.valueOf(count), Type.INT)));
+        final var end = current.block("vec_end_" + index);
+        emit(Instruction.branch(done, end, loop)
+                .withMetadata(innermost ? loopMetadata(List.of(VECTORIZE_ENABLE)) : null));
+        current.startBlock(end);
+        return result;
+    }
+
+    // !llvm.loop attachment for a loop's back edge: the distinct loop id node referencing one shared node per hint
+    private String loopMetadata(List<String> hints) {
+        final var references = new StringBuilder();
+        for (var hint : hints) {
+            references.append(", !").append(module.uniqueMetadata("!{" + hint + "}"));
+        }
+        final int loop = module.addMetadata(number -> "distinct !{!" + number + references + "}");
+        return "!llvm.loop !" + loop;
+    }
+
+    // operand[index] for arrays, the operand itself for scalars
+    private Value element(Value operand, Value index) {
+        if (operand instanceof Array array) {
+            return loadElement(elementPointer(arrayType(array), array, index), array.getType());
+        }
+        return operand;
+    }
+
+    private Value elementPointer(IrType aggregateType, Value base, String... indices) {
+        final var values = new Value[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            values[i] = constant(indices[i], Type.INT);
+        }
+        return elementPointer(aggregateType, base, values);
+    }
+
+    private Value elementPointer(IrType aggregateType, Value base, Value... indices) {
+        final var operands = new Value[indices.length + 1];
+        operands[0] = constant("0", Type.INT);
+        System.arraycopy(indices, 0, operands, 1, indices.length);
+
+        final var pointer = local(Type.INT);
+        emit(Instruction.elementPointer(pointer, aggregateType, base, IrType.I32, operands));
+        return pointer;
+    }
+
+    private Value loadElement(Value element, Type type) {
+        final var result = local(type);
+        emit(Instruction.load(result, IrType.of(type), element));
+        return result;
+    }
+
+    private void callPrintf(Value format, IrType type, Value value) {
+        emit(Instruction.call(
+                local(Type.INT), IrType.I32, PRINTF_TYPE, "printf", new IrType[] {STRING_POINTER, type}, new Value[] {
+                    format, value
+                }));
+    }
+
+    private void addStringConstant(String name, String content, int length) {
+        module.addGlobal(new Global(name, true, IrType.array(length, IrType.I8), "c\"" + content + "\\00\""));
+    }
+
+    private record Loop(int index, Instruction induction, BasicBlock body) {}
+
+    record Checkpoint(
+            IrModule.Mark module,
+            IrFunction.Mark main,
+            int heapArrays,
+            int strings,
+            boolean finished,
+            int reg,
+            int str,
+            int ifIndex,
+            int elseIndex,
+            int loopIndex,
+            int vectorLoopIndex,
+            int logicIndex) {}
+
+    private static IrType matrixType(Matrix matrix) {
+        final var rowType = IrType.array(matrix.columns(), IrType.of(matrix.getType()));
+        return IrType.array(matrix.rows.size(), rowType);
+    }
+
+    private static IrType arrayType(Array array) {
+        return IrType.array(array.length(), IrType.of(array.getType()));
+    }
+
+    private static int elementSize(Type type) {
+        return type == Type.DOUBLE ? Double.BYTES : Integer.BYTES;
+    }
+
+    private static ElementPointer format(String name) {
+        return stringPointer(name, 4);
+    }
+
+    private static ElementPointer stringPointer(String name, int length) {
+        return new ElementPointer(name, IrType.array(length, IrType.I8));
     }
 
-    static String generate() {
-        String text = "";
-        text += "declare i32 @printf(i8*, ...)\n";
-        text += "declare i32 @scanf(i8*, ...)\n";
-        text += "@strps = constant [4 x i8] c\"%s\\0A\\00\"\n";
-        text += "@strpi = constant [4 x i8] c\"%d\\0A\\00\"\n";
-        text += "@strpd = constant [4 x i8] c\"%f\\0A\\00\"\n";
-        text += "@strs = constant [5 x i8] c\"%10s\\00\"\n";
-        text += "@strspi = constant [3 x i8] c\"%d\\00\"\n";
-        text += "@true_text = constant [5 x i8] c\"true\\00\"\n";
-        text += "@false_text = constant [6 x i8] c\"false\\00\"\n";
-        text += headerText;
-        text += functionText;
-        text += "define i32 @main() nounwind{\n";
-        text += mainText;
-        text += "ret i32 0 }\n";
-        return text;
+    private static Constant constant(String value, Type type) {
+        return new Constant(value, type);
     }
 }
@@ -0,0 +1,69 @@
+package org.example.llvm;
+
+import lombok.Getter;
+import main.java.org.example.ExprLexer;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+/**
+ * Token whose attributes are worked out once, when it is lexed: the text (interned for identifiers), the value of an
+ * integer or boolean literal, a string literal without its quotes and the operator. The listener reads them instead of
+ * calling getText() and parsing the result again on every visit.
+ */
+@Getter
+final class Lexeme extends CommonToken {
+    private Operator operator;
+    // integer literal value, Long.MAX_VALUE when it does not fit; 1 or 0 for true and false
+    private long value;
+    private String content;
+
+    Lexeme(Pair<TokenSource, CharStream> source, int type, int channel, int start, int stop) {
+        super(source, type, channel, start, stop);
+    }
+
+    Lexeme(int type) {
+        super(type);
+    }
+
+    static Lexeme of(TerminalNode node) {
+        return (Lexeme) node.getSymbol();
+    }
+
+    // The first token of a child, for rules like returnType that are a single token.
+    static Lexeme of(ParseTree node) {
+        return node instanceof TerminalNode terminal ? of(terminal) : (Lexeme) ((ParserRuleContext) node).getStart();
+    }
+
+    boolean isTrue() {
+        return value != 0;
+    }
+
+    void setAttributes(String text) {
+        setText(text);
+        switch (type) {
+            case ExprLexer.INT_VALUE -> value = parse(text);
+            case ExprLexer.BOOL_VALUE -> value = text.equals("true") ? 1 : 0;
+            case ExprLexer.STRING_VALUE -> content = text.substring(1, text.length() - 1);
+            case ExprLexer.ADDITIVE_OPERATOR -> operator = text.equals("+") ? Operator.ADD : Operator.SUB;
+            case ExprLexer.MULTIPLICATIVE_OPERATOR -> operator = text.equals("*") ? Operator.MUL : Operator.DIV;
+            case ExprLexer.AND -> operator = Operator.AND;
+            case ExprLexer.OR -> operator = Operator.OR;
+            case ExprLexer.XAND -> operator = Operator.EQ;
+            case ExprLexer.XOR -> operator = Operator.NE;
+            default -> {}
+        }
+    }
+
+    private static long parse(String digits) {
+        try {
+            return Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.llvm;
+
+import java.util.HashMap;
+import java.util.Map;
+import main.java.org.example.ExprLexer;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * Creates {@link Lexeme}s with their text copied out of the input and their attributes set. Identifiers share one
+ * String per name, so the hash the symbol table computes for it is cached after the first lookup. Literals are not
+ * interned, a streamed program would keep every distinct number alive. One factory per compilation, it is not
+ * thread-safe.
+ */
+final class LexemeFactory implements TokenFactory<Lexeme> {
+    private final Map<String, String> identifiers = new HashMap<>();
+
+    static ExprLexer lexer(CharStream input, LexemeFactory factory) {
+        final var lexer = new ExprLexer(input);
+        lexer.setTokenFactory(factory);
+        return lexer;
+    }
+
+    @Override
+    public Lexeme create(
+            Pair<TokenSource, CharStream> source,
+            int type,
+            String text,
+            int channel,
+            int start,
+            int stop,
+            int line,
+            int charPositionInLine) {
+        final var lexeme = new Lexeme(source, type, channel, start, stop);
+        lexeme.setLine(line);
+        lexeme.setCharPositionInLine(charPositionInLine);
+        if (text == null && type != Token.EOF && source.b != null) {
+            text = source.b.getText(Interval.of(start, stop));
+        }
+        if (text != null) {
+            lexeme.setAttributes(type == ExprLexer.ID ? identifiers.computeIfAbsent(text, name -> name) : text);
+        }
+        return lexeme;
+    }
+
+    @Override
+    public Lexeme create(int type, String text) {
+        final var lexeme = new Lexeme(type);
+        if (text != null) {
+            lexeme.setAttributes(text);
+        }
+        return lexeme;
+    }
+}
@@ -0,0 +1,171 @@
+package org.example.llvm;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import lombok.experimental.UtilityClass;
+import org.example.ir.IrModule;
+import org.example.ir.IrPrinter;
+
+/**
+ * Runs the installed LLVM tools on a finished module instead of writing it out directly: {@code opt} at the requested
+ * level, then {@code llc} for an object file or {@code clang} to link an executable. The IR is printed straight into
+ * the first tool's standard input and every stage hands its output to the next in memory, so nothing goes through
+ * temporary files. Each stage is timed as a phase of its own. Unoptimized bitcode does not come here, the
+ * {@link org.example.ir.BitcodeWriter} writes it.
+ */
+@UtilityClass
+class LlvmToolchain {
+    // opt, llc and clang all read their input from stdin when it is named "-"
+    private static final String STDIN = "-";
+
+    boolean isNeeded(CompileOptions options) {
+        final var format = options.getOutputFormat();
+        return (format != OutputFormat.LL && format != OutputFormat.BC) || options.getOptimizationLevel() >= 0;
+    }
+
+    // Part of the cache key: every tool's resolved path, size and modification time, so another --llvm-bin, another
+    // PATH or an upgraded LLVM misses the cache instead of returning output of the old tools.
+    String fingerprint(CompileOptions options) {
+        final var text = new StringBuilder();
+        for (var stage : stages(options)) {
+            final var tool = locate(options, stage.command().getFirst());
+            text.append(stage.name()).append('=');
+            try {
+                final var attributes = Files.readAttributes(tool, BasicFileAttributes.class);
+                text.append(tool.toRealPath())
+                        .append('@')
+                        .append(attributes.size())
+                        .append('@')
+                        .append(attributes.lastModifiedTime().toMillis());
+            } catch (IOException e) {
+                text.append(tool);
+            }
+            text.append(';');
+        }
+        return text.toString();
+    }
+
+    void run(IrModule module, Path output, CompileOptions options, CompileMetrics metrics) throws IOException {
+        final var stages = stages(options);
+        byte[] input = null;
+        for (int i = 0; i < stages.size(); i++) {
+            final var stage = stages.get(i);
+            final var command = new ArrayList<>(stage.command());
+            final boolean last = i == stages.size() - 1;
+            command.addAll(List.of("-o", last ? output.toString() : STDIN));
+            try (var phase = metrics.phase(stage.name())) {
+                input = run(stage.name(), tool(options, command), module, input);
+            }
+        }
+    }
+
+    // [opt |] llc -> object, [opt |] clang -> executable, opt alone for .ll and .bc
+    private List<Stage> stages(CompileOptions options) {
+        final var level = "-O" + Math.max(options.getOptimizationLevel(), 0);
+        final var format = options.getOutputFormat();
+        final var stages = new ArrayList<Stage>();
+        final var opt = new ArrayList<>(List.of("opt", level));
+        if (format == OutputFormat.LL) {
+            opt.add("-S");
+        }
+        opt.add(STDIN);
+        // llc and clang read textual IR as well, unoptimized code does not need opt in front of them
+        if (options.getOptimizationLevel() >= 0 || format == OutputFormat.LL || format == OutputFormat.BC) {
+            stages.add(new Stage("opt", opt));
+        }
+
+        switch (format) {
+            case OBJECT -> stages.add(new Stage("llc", List.of("llc", level, "-filetype=obj", STDIN)));
+            case EXECUTABLE -> stages.add(new Stage("clang", List.of("clang", level, "-x", "ir", STDIN)));
+            default -> {}
+        }
+        return stages;
+    }
+
+    // The executable ProcessBuilder runs for name: the one in --llvm-bin or the first on PATH.
+    private Path locate(CompileOptions options, String name) {
+        if (options.getLlvmBin() != null) {
+            return Path.of(options.getLlvmBin(), name);
+        }
+        final var path = System.getenv("PATH");
+        if (path != null) {
+            for (var directory : path.split(File.pathSeparator)) {
+                final var candidate = Path.of(directory, name);
+                if (Files.isExecutable(candidate)) {
+                    return candidate;
+                }
+            }
+        }
+        return Path.of(name);
+    }
+
+    private List<String> tool(CompileOptions options, List<String> command) {
+        if (options.getLlvmBin() == null) {
+            return command;
+        }
+        final var resolved = new ArrayList<>(command);
+        resolved.set(0, Path.of(options.getLlvmBin(), command.getFirst()).toString());
+        return resolved;
+    }
+
+    // Feeds the module (first stage) or the previous stage's output to the tool and returns what it wrote to stdout.
+    private byte[] run(String name, List<String> command, IrModule module, byte[] input) throws IOException {
+        final Process process;
+        try {
+            process = new ProcessBuilder(command).start();
+        } catch (IOException e) {
+            throw new CompilationException("Cannot run " + command.getFirst()
+                    + ", install LLVM or point --llvm-bin at its bin directory: " + e.getMessage());
+        }
+
+        // both pipes are drained while the input is written, a tool blocked on a full pipe would never read more
+        final var stdout = drain(process.getInputStream());
+        final var stderr = drain(process.getErrorStream());
+        try (OutputStream stdin = new BufferedOutputStream(process.getOutputStream())) {
+            if (input == null) {
+                final var writer = new OutputStreamWriter(stdin, StandardCharsets.UTF_8);
+                new IrPrinter(writer).print(module);
+                writer.flush();
+            } else {
+                stdin.write(input);
+            }
+        } catch (IOException e) {
+            // the tool exited early, its exit code and stderr below say why
+        }
+
+        try {
+            if (process.waitFor() != 0) {
+                throw new CompilationException(name + " failed with exit code " + process.exitValue() + ": "
+                        + new String(stderr.get(), StandardCharsets.UTF_8).strip());
+            }
+            return stdout.get();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(name + " interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot read output of " + name, e.getCause());
+        }
+    }
+
+    private FutureTask<byte[]> drain(InputStream stream) {
+        final var task = new FutureTask<>(stream::readAllBytes);
+        Thread.ofVirtual().start(task);
+        return task;
+    }
+
+    private record Stage(String name, List<String> command) {}
+}
@@ -0,0 +1,88 @@
+package org.example.llvm;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * Read-only {@link CharStream} over a (memory-mapped) byte buffer. Every byte is one symbol, so ASCII input is read
+ * in place without decoding it into a code point array. Bytes of multi-byte UTF-8 sequences can only occur inside
+ * string literals, where the lexer accepts any symbol; {@link #getText(Interval)} decodes the byte range as UTF-8, so
+ * token text is still correct. Columns in error messages count bytes.
+ */
+class MappedCharStream implements CharStream {
+    private final ByteBuffer buffer;
+    private final String sourceName;
+    private final int size;
+    private int position;
+
+    MappedCharStream(ByteBuffer buffer, String sourceName) {
+        this.buffer = buffer;
+        this.sourceName = sourceName;
+        this.size = buffer.limit();
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        final int start = Math.max(interval.a, 0);
+        final int stop = Math.min(interval.b, size - 1);
+        if (stop < start) {
+            return "";
+        }
+
+        final var bytes = new byte[stop - start + 1];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void consume() {
+        if (position >= size) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        position++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0) {
+            return 0;
+        }
+
+        final int index = i < 0 ? position + i : position + i - 1;
+        if (index < 0 || index >= size) {
+            return IntStream.EOF;
+        }
+        return buffer.get(index) & 0xFF;
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {}
+
+    @Override
+    public int index() {
+        return position;
+    }
+
+    @Override
+    public void seek(int index) {
+        position = Math.min(index, size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getSourceName() {
+        return sourceName;
+    }
+}
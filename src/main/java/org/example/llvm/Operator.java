@@ -0,0 +1,20 @@
+package org.example.llvm;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+enum Operator {
+    ADD("+"),
+    SUB("-"),
+    MUL("*"),
+    DIV("/"),
+    AND("&&"),
+    OR("||"),
+    // == and != on booleans are xand and xor
+    EQ("=="),
+    NE("!=");
+
+    private final String symbol;
+}
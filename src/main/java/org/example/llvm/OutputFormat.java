@@ -0,0 +1,26 @@
+package org.example.llvm;
+
+import java.util.Arrays;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum OutputFormat {
+    // textual IR, the only format that needs no LLVM tools unless it is optimized
+    LL("ll", ".ll"),
+    BC("bc", ".bc"),
+    OBJECT("obj", ".o"),
+    EXECUTABLE("exe", "");
+
+    private final String flag;
+    // appended to the source's base name when batch mode names the output
+    private final String extension;
+
+    public static OutputFormat of(String flag) {
+        return Arrays.stream(values())
+                .filter(format -> format.flag.equals(flag))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown output format: " + flag));
+    }
+}
@@ -0,0 +1,23 @@
+package org.example.llvm;
+
+import java.util.Arrays;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum OutputMode {
+    // one printf call per print, unbuffered as far as the program is concerned
+    PRINTF("printf"),
+    // prints formatted by the runtime of BufferedOutput into one buffer, written out when full and at exit
+    BUFFERED("buffered");
+
+    private final String flag;
+
+    public static OutputMode of(String flag) {
+        return Arrays.stream(values())
+                .filter(mode -> mode.flag.equals(flag))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown output mode: " + flag));
+    }
+}
@@ -0,0 +1,8 @@
+package org.example.llvm;
+
+public enum ParsingMode {
+    // SLL prediction with a bailing error strategy first, full LL only if that fails
+    TWO_STAGE,
+    SLL,
+    LL
+}
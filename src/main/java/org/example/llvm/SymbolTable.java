@@ -0,0 +1,169 @@
+package org.example.llvm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.example.type.Value;
+
+/**
+ * Variables visible at a point of the program: the top-level scope plus one scope per function, loop and if/else block
+ * around it. Names are interned to dense ids, so a lookup hashes the name once however deep the nesting is, and every
+ * scope is a small open-addressed table keyed by id that is pushed and dropped in O(1). A function sees the top-level
+ * scope only through global storage, the registers and stack slots of main are not its own.
+ */
+final class SymbolTable {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<Scope> scopes = new ArrayList<>();
+    // how many times each local storage name is taken in main and in the function being defined
+    private Map<String, Integer> mainStorage = new HashMap<>();
+    private Map<String, Integer> functionStorage;
+
+    // storage is where the value is loaded from again, null for registers (parameters, loop counters) and arrays
+    record Symbol(Value value, Value storage) {}
+
+    record Snapshot(Scope global, Map<String, Integer> mainStorage) {}
+
+    SymbolTable() {
+        scopes.add(new Scope());
+    }
+
+    boolean isGlobalScope() {
+        return scopes.size() == 1;
+    }
+
+    boolean inFunction() {
+        return functionStorage != null;
+    }
+
+    void enterFunction() {
+        functionStorage = new HashMap<>();
+        push();
+    }
+
+    void exitFunction() {
+        pop();
+        functionStorage = null;
+    }
+
+    void push() {
+        scopes.add(new Scope());
+    }
+
+    void pop() {
+        scopes.removeLast();
+    }
+
+    int intern(String name) {
+        return ids.computeIfAbsent(name, key -> ids.size());
+    }
+
+    // Binds in the innermost scope, replacing a binding of the same name made there.
+    void put(int id, Symbol symbol) {
+        scopes.getLast().put(id, symbol);
+    }
+
+    boolean isDeclaredInScope(int id) {
+        return scopes.getLast().get(id) != null;
+    }
+
+    Symbol lookup(int id) {
+        for (int i = scopes.size() - 1; i > 0; i--) {
+            final var symbol = scopes.get(i).get(id);
+            if (symbol != null) {
+                return symbol;
+            }
+        }
+
+        final var symbol = scopes.getFirst().get(id);
+        if (symbol == null || !inFunction()) {
+            return symbol;
+        }
+        return symbol.storage() != null && symbol.storage().isGlobal() ? symbol : null;
+    }
+
+    // Parameters are registers named %name, so a local declared in the function must not take that name.
+    void reserveStorage(String name) {
+        storageName(name);
+    }
+
+    // A local stack slot name not taken yet in the current function: name, then name.1, name.2, ...
+    String storageName(String name) {
+        final var taken = inFunction() ? functionStorage : mainStorage;
+        final int count = taken.merge(name, 1, Integer::sum) - 1;
+        return count == 0 ? name : name + "." + count;
+    }
+
+    // Only taken between top-level statements, when the top-level scope is the only one.
+    Snapshot snapshot() {
+        return new Snapshot(scopes.getFirst().copy(), new HashMap<>(mainStorage));
+    }
+
+    void restore(Snapshot snapshot) {
+        scopes.clear();
+        scopes.add(snapshot.global().copy());
+        mainStorage = new HashMap<>(snapshot.mainStorage());
+        functionStorage = null;
+    }
+
+    // Linear probing over power-of-two tables; ids are dense, a multiplicative hash spreads neighbouring ones.
+    static final class Scope {
+        private static final int INITIAL_CAPACITY = 8;
+
+        private int[] keys = new int[INITIAL_CAPACITY];
+        private Symbol[] values = new Symbol[INITIAL_CAPACITY];
+        private int size;
+
+        Symbol get(int id) {
+            final int mask = keys.length - 1;
+            for (int slot = slot(id, mask); values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == id) {
+                    return values[slot];
+                }
+            }
+            return null;
+        }
+
+        void put(int id, Symbol symbol) {
+            final int mask = keys.length - 1;
+            int slot = slot(id, mask);
+            while (values[slot] != null && keys[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            if (values[slot] == null) {
+                size++;
+            }
+            keys[slot] = id;
+            values[slot] = symbol;
+            if (size * 4 > keys.length * 3) {
+                grow();
+            }
+        }
+
+        Scope copy() {
+            final var copy = new Scope();
+            copy.keys = keys.clone();
+            copy.values = values.clone();
+            copy.size = size;
+            return copy;
+        }
+
+        private void grow() {
+            final var oldKeys = keys;
+            final var oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new Symbol[oldValues.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int slot(int id, int mask) {
+            final int hash = id * 0x9E3779B9;
+            return (hash ^ hash >>> 16) & mask;
+        }
+    }
+}
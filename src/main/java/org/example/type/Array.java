@@ -1,13 +1,20 @@
 package org.example.type;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Array extends Value {
 
-    public List<Value> values = new LinkedList<>();
+    public List<Value> values = new ArrayList<>();
+
+    // length of an array declared with "= [N]", which has no values to count
+    public int allocatedLength = 0;
 
     public Array(String name, Type type, boolean isGlobal) {
         super(name, type, isGlobal);
     }
+
+    public int length() {
+        return Math.max(values.size(), allocatedLength);
+    }
 }
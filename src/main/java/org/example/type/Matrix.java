@@ -1,13 +1,17 @@
 package org.example.type;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Matrix extends Value {
 
-    public List<Array> rows = new LinkedList<>();
+    public List<Array> rows = new ArrayList<>();
 
     public Matrix(String name, Type type, boolean isGlobal) {
         super(name, type, isGlobal);
     }
+
+    public int columns() {
+        return rows.isEmpty() ? 0 : rows.getFirst().length();
+    }
 }